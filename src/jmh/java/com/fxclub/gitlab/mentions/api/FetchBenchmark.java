@@ -0,0 +1,114 @@
+package com.fxclub.gitlab.mentions.api;
+
+import com.fxclub.gitlab.mentions.fixtures.GitLabStubServer;
+import com.fxclub.gitlab.mentions.fixtures.SyntheticUsers;
+import com.fxclub.gitlab.mentions.model.GitLabRoster;
+import com.fxclub.gitlab.mentions.model.GitLabSource;
+import com.fxclub.gitlab.mentions.model.GitLabUser;
+import com.fxclub.gitlab.mentions.settings.GitLabSettingsState;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full listing end to end against {@link GitLabStubServer}: paged member lists fetched concurrently and the
+ * instance-wide user list walked with keyset pagination. {@code latencyMs} is added to every response, and with
+ * {@code errorEvery} set, every n-th request fails so the retry path is measured too. {@code fetchMode} switches
+ * between the REST listings and the GraphQL queries; {@link Traffic} reports the requests and response bytes of each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class FetchBenchmark {
+    @Param({"1000", "10000"})
+    public int users;
+
+    @Param({"0", "20"})
+    public long latencyMs;
+
+    @Param({"0"})
+    public int errorEvery;
+
+    @Param({"rest", "graphql"})
+    public String fetchMode;
+
+    private GitLabStubServer server;
+    private GitLabApiClient client;
+
+    /** What the listings of one iteration sent over the wire; JMH reports these next to the timings. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Traffic {
+        public long requests;
+        public long responseBytes;
+        public long usersListed;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            requests = 0;
+            responseBytes = 0;
+            usersListed = 0;
+        }
+
+        public double bytesPerUser() {
+            return usersListed == 0 ? 0 : (double) responseBytes / usersListed;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<GitLabUser> roster = SyntheticUsers.generate(users);
+        server = GitLabStubServer.start(roster, GitLabStubServer.Options.DEFAULT
+                .withLatencyMs(latencyMs).withErrorEvery(errorEvery));
+        GitLabSettingsState settings = new GitLabSettingsState();
+        settings.hostUrl = server.baseUrl();
+        settings.privateToken = "benchmark";
+        settings.fetchMode = fetchMode;
+        client = new GitLabApiClient(() -> settings);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public GitLabRoster groupMembers(Traffic traffic) {
+        return counted(GitLabSource.group("42"), traffic);
+    }
+
+    /** All active users as keyset pages over REST, which GraphQL mode also uses for this source. */
+    @Benchmark
+    public GitLabRoster activeUsersKeyset(Traffic traffic) {
+        return counted(GitLabSource.users(), traffic);
+    }
+
+    /** Lists {@code source}, adding its requests and bytes to {@code traffic}; invocations run one at a time. */
+    private GitLabRoster counted(GitLabSource source, Traffic traffic) {
+        long requestsBefore = server.requestCount();
+        long bytesBefore = server.bytesSent();
+        GitLabRoster users = client.listUsers(source);
+        traffic.requests += server.requestCount() - requestsBefore;
+        traffic.responseBytes += server.bytesSent() - bytesBefore;
+        traffic.usersListed += users.size();
+        return users;
+    }
+}
@@ -0,0 +1,100 @@
+package com.fxclub.gitlab.mentions.api;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fxclub.gitlab.mentions.fixtures.SyntheticUsers;
+import com.fxclub.gitlab.mentions.model.GitLabUser;
+import com.fxclub.gitlab.mentions.settings.GitLabSettingsState;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming the JSON pages of a whole roster into users, without the network; pages hold 100 users like the client
+ * asks for. {@code format} compares REST member objects with the GraphQL projection; {@link Input} reports the bytes
+ * per user of each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PageParseBenchmark {
+    private static final int PAGE_SIZE = 100;
+    private static final String BASE_URL = "https://gitlab.example.com";
+
+    @Param({"1000", "10000", "100000"})
+    public int users;
+
+    @Param({"rest", "graphql"})
+    public String format;
+
+    private final JsonFactory json = new JsonFactory();
+    private GitLabApiClient client;
+    private List<byte[]> pages;
+    private long pageBytes;
+
+    /** The JSON parsed in one iteration; JMH reports these next to the timings. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Input {
+        public long bytesParsed;
+        public long usersParsed;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytesParsed = 0;
+            usersParsed = 0;
+        }
+
+        public double bytesPerUser() {
+            return usersParsed == 0 ? 0 : (double) bytesParsed / usersParsed;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        GitLabSettingsState settings = new GitLabSettingsState();
+        client = new GitLabApiClient(() -> settings);
+        List<GitLabUser> all = SyntheticUsers.generate(users);
+        pages = new ArrayList<>();
+        pageBytes = 0;
+        for (int from = 0; from < all.size(); from += PAGE_SIZE) {
+            int to = Math.min(all.size(), from + PAGE_SIZE);
+            byte[] page = "graphql".equals(format)
+                    ? SyntheticUsers.toGraphQlPage(all.subList(from, to), to < all.size() ? String.valueOf(to) : null)
+                    : SyntheticUsers.toJson(all.subList(from, to));
+            pages.add(page);
+            pageBytes += page.length;
+        }
+    }
+
+    @Benchmark
+    public List<GitLabUser> parseAllPages(Input input) throws IOException {
+        List<GitLabUser> sink = new ArrayList<>(users);
+        if ("graphql".equals(format)) {
+            for (byte[] page : pages) GitLabGraphQl.readPage(json, new ByteArrayInputStream(page), BASE_URL, sink);
+        } else {
+            for (byte[] page : pages) client.readUsers(new ByteArrayInputStream(page), sink);
+        }
+        input.bytesParsed += pageBytes;
+        input.usersParsed += sink.size();
+        return sink;
+    }
+}
@@ -0,0 +1,77 @@
+package com.fxclub.gitlab.mentions.service;
+
+import com.fxclub.gitlab.mentions.fixtures.SyntheticUsers;
+import com.fxclub.gitlab.mentions.model.GitLabRoster;
+import com.fxclub.gitlab.mentions.model.GitLabUser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongToIntFunction;
+
+/**
+ * What one completion keystroke costs: ranking the cached roster for a prefix, as
+ * {@link GitLabUserService#filterGroupMembers(String, LongToIntFunction)} does, against the linear substring scan
+ * over a user list that the index replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RosterSearchBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int users;
+
+    /** A short prefix, a word prefix, a surname, a fuzzy initialism and a miss. */
+    @Param({"j", "mar", "smi", "jsmi", "zzq"})
+    public String query;
+
+    private List<GitLabUser> list;
+    private GitLabUserIndex index;
+    private LongToIntFunction boosts;
+
+    @Setup
+    public void setUp() {
+        list = SyntheticUsers.generate(users);
+        index = new GitLabUserIndex(GitLabRoster.of(list));
+        // Frecency lifts a handful of ids, like a user who mentions the same colleagues
+        boosts = id -> id % 997 == 0 ? 50 : 0;
+    }
+
+    @Benchmark
+    public List<GitLabUser> search() {
+        return index.search(query, 10);
+    }
+
+    @Benchmark
+    public List<GitLabUser> searchWithFrecency() {
+        return index.search(query, 10, boosts);
+    }
+
+    /** The baseline: the first ten users whose username or name contains the query, in roster order, unranked. */
+    @Benchmark
+    public List<GitLabUser> linearScan() {
+        String q = query.toLowerCase(Locale.ROOT);
+        return list.stream()
+                .filter(u -> {
+                    String uname = u.getUsername();
+                    String name = u.getName();
+                    return uname.toLowerCase(Locale.ROOT).contains(q) || name != null && name.toLowerCase(Locale.ROOT).contains(q);
+                })
+                .limit(10)
+                .toList();
+    }
+}
@@ -0,0 +1,55 @@
+package com.fxclub.gitlab.mentions.service;
+
+import com.fxclub.gitlab.mentions.fixtures.SyntheticUsers;
+import com.fxclub.gitlab.mentions.model.GitLabRoster;
+import com.fxclub.gitlab.mentions.model.GitLabUser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** What publishing a fetched source costs: packing the users into a roster and building the search index over it. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnapshotBuildBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int users;
+
+    private List<GitLabUser> fetched;
+    private GitLabRoster roster;
+
+    @Setup
+    public void setUp() {
+        fetched = SyntheticUsers.generate(users);
+        roster = GitLabRoster.of(fetched);
+    }
+
+    @Benchmark
+    public GitLabRoster roster() {
+        return GitLabRoster.of(fetched);
+    }
+
+    @Benchmark
+    public GitLabUserIndex index() {
+        return new GitLabUserIndex(roster);
+    }
+
+    @Benchmark
+    public GitLabUserIndex rosterAndIndex() {
+        return new GitLabUserIndex(GitLabRoster.of(fetched));
+    }
+}
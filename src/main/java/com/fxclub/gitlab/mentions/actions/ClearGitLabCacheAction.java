@@ -1,6 +1,8 @@
 package com.fxclub.gitlab.mentions.actions;
 
+import com.fxclub.gitlab.mentions.service.GitLabAvatarService;
 import com.fxclub.gitlab.mentions.service.GitLabUserService;
+import com.fxclub.gitlab.mentions.service.OwnerHandleResolver;
 import com.intellij.notification.NotificationGroupManager;
 import com.intellij.notification.NotificationType;
 import com.intellij.openapi.actionSystem.AnAction;
@@ -9,13 +11,15 @@ import com.intellij.openapi.application.ApplicationManager;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
 
-/** Clears search cache and group members cache. */
+/** Clears search cache, group members cache and cached avatars, including those on disk. */
 @Slf4j
 public class ClearGitLabCacheAction extends AnAction {
     @Override
     public void actionPerformed(@NotNull AnActionEvent e) {
         GitLabUserService service = ApplicationManager.getApplication().getService(GitLabUserService.class);
         service.clearCache();
+        GitLabAvatarService.getInstance().clear();
+        OwnerHandleResolver.getInstance().clear();
         NotificationGroupManager.getInstance()
                 .getNotificationGroup("GitLab Mentions")
                 .createNotification("GitLab Mentions caches cleared.", NotificationType.INFORMATION)
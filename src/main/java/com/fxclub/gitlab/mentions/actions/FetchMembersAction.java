@@ -1,5 +1,6 @@
 package com.fxclub.gitlab.mentions.actions;
 
+import com.fxclub.gitlab.mentions.model.GitLabSource;
 import com.fxclub.gitlab.mentions.service.GitLabUserService;
 import com.fxclub.gitlab.mentions.settings.GitLabSettingsState;
 import com.intellij.openapi.actionSystem.AnAction;
@@ -13,7 +14,10 @@ import com.intellij.openapi.options.ShowSettingsUtil;
 import com.intellij.notification.NotificationAction;
 import lombok.extern.slf4j.Slf4j;
 
-/** Explicitly fetches (or refetches) users: group members if Group ID is set, otherwise active users. */
+import java.util.List;
+import java.util.Locale;
+
+/** Explicitly fetches (or refetches) users of every configured source: group or project members, or active users. */
 @Slf4j
 public class FetchMembersAction extends AnAction {
     @Override
@@ -22,9 +26,16 @@ public class FetchMembersAction extends AnAction {
         GitLabUserService service = ApplicationManager.getApplication().getService(GitLabUserService.class);
         int count = service.forceReloadMembers();
         if (count > 0) {
-            String msg = (settings.id != null && !settings.id.isBlank())
-                    ? ("Fetched " + count + " members for group ID " + settings.id + ".")
-                    : ("Fetched " + count + " active users.");
+            List<GitLabSource> sources = settings.effectiveSources();
+            String msg;
+            if (sources.size() > 1) {
+                msg = "Fetched " + count + " unique users from " + sources.size() + " sources.";
+            } else if (sources.get(0).kind() == GitLabSource.Kind.USERS) {
+                msg = "Fetched " + count + " active users.";
+            } else {
+                msg = "Fetched " + count + " members for " + sources.get(0).kind().name().toLowerCase(Locale.ROOT)
+                        + " ID " + sources.get(0).id() + ".";
+            }
             NotificationGroupManager.getInstance()
                     .getNotificationGroup("GitLab Mentions")
                     .createNotification(msg, NotificationType.INFORMATION)
@@ -1,8 +1,11 @@
 package com.fxclub.gitlab.mentions.actions;
 
-import com.fxclub.gitlab.mentions.model.GitLabUser;
+import com.fxclub.gitlab.mentions.api.GitLabHttpCache;
+import com.fxclub.gitlab.mentions.metrics.GitLabMetrics;
+import com.fxclub.gitlab.mentions.model.GitLabRoster;
+import com.fxclub.gitlab.mentions.model.GitLabSource;
+import com.fxclub.gitlab.mentions.service.GitLabAvatarService;
 import com.fxclub.gitlab.mentions.service.GitLabUserService;
-import com.fxclub.gitlab.mentions.settings.GitLabSettingsState;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.application.ApplicationManager;
@@ -11,36 +14,51 @@ import com.intellij.notification.NotificationType;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.List;
+import java.util.Map;
 
-/** Shows a brief snapshot of cached GitLab users (group members if Group ID is set, otherwise active users). */
+/**
+ * Shows a brief snapshot of cached GitLab users: the merged roster, the count and age per source, and the
+ * {@link GitLabMetrics} timings and counters.
+ */
 @Slf4j
 public class ShowCachedUsersAction extends AnAction {
     @Override
     public void actionPerformed(@NotNull AnActionEvent e) {
         GitLabUserService service = ApplicationManager.getApplication().getService(GitLabUserService.class);
-        List<GitLabUser> cached = service.getGroupMembersSnapshot();
-        GitLabSettingsState settings = GitLabSettingsState.getInstance();
-        boolean hasGroup = settings.id != null && !settings.id.isBlank();
+        GitLabRoster cached = service.getRoster();
+        Map<GitLabSource, Integer> sources = service.getSourceSizes();
+        Map<GitLabSource, Long> ages = service.getSourceAges();
 
         StringBuilder msg = new StringBuilder();
-        if (hasGroup) {
-            msg.append("Group Members Cached: ").append(cached.size()).append(" (group ").append(settings.id).append(")\n");
-        } else {
-            msg.append("Active Users Cached: ").append(cached.size()).append('\n');
+        msg.append("Users Cached: ").append(cached.size())
+                .append(" (").append(cached.footprintBytes() / 1024).append(" KB)").append('\n');
+        for (Map.Entry<GitLabSource, Integer> source : sources.entrySet()) {
+            msg.append("  ").append(source.getKey()).append(": ").append(source.getValue());
+            long age = ages.getOrDefault(source.getKey(), -1L);
+            if (age >= 0) msg.append(" (synced ").append(age).append(" s ago)");
+            msg.append('\n');
         }
+        if (service.getGroupCount() > 0) msg.append("Groups Cached: ").append(service.getGroupCount()).append('\n');
         // Append first few entries for quick glance
         int preview = Math.min(15, cached.size());
         if (preview > 0) {
             msg.append("\n-- Preview (first ").append(preview).append(") --\n");
             for (int i = 0; i < preview; i++) {
-                GitLabUser u = cached.get(i);
-                msg.append("@").append(u.getUsername());
-                if (u.getName() != null && !u.getName().isBlank()) msg.append("  ").append(u.getName());
+                String name = cached.name(i);
+                msg.append("@").append(cached.username(i));
+                if (name != null && !name.isBlank()) msg.append("  ").append(name);
                 msg.append('\n');
             }
             if (cached.size() > preview) msg.append("...");
         }
+        GitLabHttpCache httpCache = service.getHttpCache();
+        msg.append("\nHTTP cache: ").append(httpCache.hitCount()).append(" not-modified / ")
+                .append(httpCache.missCount()).append(" downloaded pages, ")
+                .append(httpCache.bytesReceived() / 1024).append(" KB received");
+        GitLabAvatarService avatars = GitLabAvatarService.getInstance();
+        msg.append("\nAvatars in memory: ").append(avatars.cachedIconCount())
+                .append(" (").append(avatars.cachedIconBytes() / 1024).append(" KB)");
+        msg.append("\n\n-- Metrics since IDE start --\n").append(GitLabMetrics.report());
         NotificationGroupManager.getInstance()
                 .getNotificationGroup("GitLab Mentions")
                 .createNotification(msg.toString(), NotificationType.INFORMATION)
@@ -1,36 +1,73 @@
 package com.fxclub.gitlab.mentions.api;
 
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fxclub.gitlab.mentions.metrics.GitLabMetrics;
+import com.fxclub.gitlab.mentions.model.GitLabGroup;
+import com.fxclub.gitlab.mentions.model.GitLabRoster;
+import com.fxclub.gitlab.mentions.model.GitLabSource;
 import com.fxclub.gitlab.mentions.model.GitLabUser;
 import com.fxclub.gitlab.mentions.settings.GitLabSettingsState;
 import com.intellij.notification.NotificationAction;
 import com.intellij.notification.NotificationGroupManager;
 import com.intellij.notification.NotificationType;
 import com.intellij.openapi.options.ShowSettingsUtil;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Slf4j
 public class GitLabApiClient {
     private final HttpClient httpClient;
     private final ObjectMapper mapper;
+    private final Supplier<GitLabSettingsState> settings;
+    private final RequestScheduler scheduler;
+    private final GitLabHttpCache httpCache = new GitLabHttpCache();
+    /** Host and source key to the full path GraphQL addresses the group or project by. */
+    private final Map<String, String> fullPaths = new ConcurrentHashMap<>();
     private static volatile long lastInvalidTokenNotifiedAtSec = 0L;
+    private static final int MAX_PAGES = 1000; // safety cap
+    private static final long CANCEL_POLL_MS = 100;
 
     public GitLabApiClient() {
+        this(GitLabSettingsState::getInstance);
+    }
+
+    /** For use outside the IDE, e.g. benchmarks against a stub server: reads host and token from {@code settings}. */
+    public GitLabApiClient(Supplier<GitLabSettingsState> settings) {
+        this.settings = settings;
+        scheduler = new RequestScheduler(() -> settings.get().maxConcurrentRequests);
         httpClient = HttpClient.newBuilder()
                 .connectTimeout(Duration.ofSeconds(3))
                 .build();
@@ -38,6 +75,9 @@ public class GitLabApiClient {
                 .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
     }
 
+    /** Conditional-request cache shared by all listings of this client (hit/miss and byte counters). */
+    public GitLabHttpCache getHttpCache() { return httpCache; }
+
     private void notifyInvalidTokenOnce() {
         long now = System.currentTimeMillis() / 1000L;
         if (now - lastInvalidTokenNotifiedAtSec < 60) return; // throttle to 1/min
@@ -66,70 +106,859 @@ public class GitLabApiClient {
         return builder;
     }
 
-    private List<GitLabUser> fetchUsersPaged(Function<Integer, String> urlForPage,
-                                             GitLabSettingsState settings,
-                                             int perPage,
-                                             String contextLogName) {
-        List<GitLabUser> all = new ArrayList<>();
-        int page = 1;
+    /** Status and headers of any response, which the {@link RequestScheduler} and the retry loop act on. */
+    private interface Response {
+        int status();
+
+        HttpHeaders headers();
+    }
+
+    /**
+     * One fetched page: status, parsed users (null unless the page is usable), the response headers and, for GraphQL,
+     * the cursor of the next page (null on the last page and for REST pages).
+     */
+    private record Page(int status, List<GitLabUser> users, HttpHeaders headers, String nextCursor) implements Response {
+        Page(int status, List<GitLabUser> users, HttpHeaders headers) {
+            this(status, users, headers, null);
+        }
+    }
+
+    /** Any other response: status, headers and what was read from the body, which is null unless the status is 2xx. */
+    private record Reply<T>(int status, HttpHeaders headers, T body) implements Response {}
+
+    /** Reads the decoded body of a 2xx response. */
+    @FunctionalInterface
+    private interface BodyReader<T> {
+        T read(InputStream body) throws IOException;
+    }
+
+    /** The users of a paged listing in order, and which of them each page contributed, for the HTTP cache. */
+    private static final class Listing {
+        final List<GitLabUser> users = new ArrayList<>();
+        final List<GitLabHttpCache.PageSlice> pages = new ArrayList<>();
+
+        void add(String url, Page page) {
+            pages.add(new GitLabHttpCache.PageSlice(url, page.headers(), users.size(), users.size() + page.users().size()));
+            users.addAll(page.users());
+        }
+    }
+
+    /**
+     * Fetches one page, retrying transient failures (see {@link RequestScheduler#isTransient}) and I/O errors with
+     * jittered backoff. {@code firstAttempt}, if not null, is an already started request for the page. Returns the
+     * last response, which may still be a failure, and throws if the last attempt failed with an I/O error.
+     */
+    private Page fetchPageReliably(String url, GitLabSettingsState settings, CompletableFuture<Page> firstAttempt)
+            throws IOException, InterruptedException {
+        return withRetries(url, () -> fetchPageAsync(url, settings), firstAttempt);
+    }
+
+    /** As above for any request; {@code request} starts a new attempt and {@code url} only names it in the log. */
+    private <R extends Response> R withRetries(String url, Supplier<CompletableFuture<R>> request,
+                                               CompletableFuture<R> firstAttempt) throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            R page = null;
+            IOException error = null;
+            try {
+                page = await(attempt == 1 && firstAttempt != null ? firstAttempt : request.get());
+            } catch (IOException ex) {
+                if (attempt >= RequestScheduler.MAX_ATTEMPTS) throw ex;
+                error = ex;
+            }
+            if (page != null && (!RequestScheduler.isTransient(page.status()) || attempt >= RequestScheduler.MAX_ATTEMPTS)) {
+                return page;
+            }
+            long delayMs = scheduler.retryDelayMs(attempt, page == null ? null : page.headers());
+            log.info("Retrying {} in {} ms after {}", url, delayMs, page == null ? error.toString() : "status " + page.status());
+            GitLabMetrics.PAGE_RETRIES.increment();
+            TimeUnit.MILLISECONDS.sleep(delayMs % CANCEL_POLL_MS);
+            for (long slept = delayMs % CANCEL_POLL_MS; slept < delayMs; slept += CANCEL_POLL_MS) {
+                ProgressManager.checkCanceled();
+                TimeUnit.MILLISECONDS.sleep(CANCEL_POLL_MS);
+            }
+        }
+    }
+
+    /** Starts a page request once the {@link RequestScheduler} admits it; blocks the caller until then. */
+    private CompletableFuture<Page> fetchPageAsync(String url, GitLabSettingsState settings) {
+        HttpRequest.Builder request = newRequest(url, settings);
+        GitLabHttpCache.Entry validated = httpCache.prepare(request, url);
+        return scheduled(() -> {
+            long startedNanos = System.nanoTime();
+            // Parse on the client's executor so the scheduler's slot also covers the body transfer
+            return httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofInputStream())
+                    .thenApply(resp -> {
+                        GitLabMetrics.PAGE_LATENCY.recordSince(startedNanos);
+                        try {
+                            return toPage(url, validated, resp);
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    });
+        });
+    }
+
+    /** Runs {@code send} in a {@link RequestScheduler} slot, which the response's status and headers then release. */
+    private <R extends Response> CompletableFuture<R> scheduled(Supplier<CompletableFuture<R>> send) {
+        scheduler.acquire();
+        return admitted(send);
+    }
+
+    /** Runs {@code send} in the slot the caller was just admitted to; the response's status and headers release it. */
+    private <R extends Response> CompletableFuture<R> admitted(Supplier<CompletableFuture<R>> send) {
+        CompletableFuture<R> page;
         try {
-            while (true) {
-                String url = urlForPage.apply(page);
-                HttpResponse<String> resp = httpClient.send(newRequest(url, settings).build(), HttpResponse.BodyHandlers.ofString());
+            page = send.get();
+        } catch (RuntimeException ex) {
+            scheduler.release(-1, null);
+            throw ex;
+        }
+        page.whenComplete((result, error) -> {
+            if (result == null) {
+                scheduler.release(-1, null);
+            } else {
+                scheduler.release(result.status(), result.headers());
+            }
+        });
+        return page;
+    }
+
+    /**
+     * Sends {@code request} in a scheduler slot and reads a 2xx body with {@code reader}, or discards it if
+     * {@code reader} is null. {@code exchange}, if not null, receives the HTTP exchange so that the caller can abort
+     * it: cancelling a dependent stage does not reach the exchange by itself.
+     */
+    private <T> CompletableFuture<Reply<T>> sendAsync(HttpRequest request, BodyReader<T> reader,
+                                                    AtomicReference<CompletableFuture<?>> exchange) {
+        return scheduled(() -> send(request, reader, exchange));
+    }
+
+    /** The exchange behind {@link #sendAsync}, for a caller that holds a scheduler slot already. */
+    private <T> CompletableFuture<Reply<T>> send(HttpRequest request, BodyReader<T> reader,
+                                               AtomicReference<CompletableFuture<?>> exchange) {
+        CompletableFuture<HttpResponse<InputStream>> sent =
+                httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+        if (exchange != null) exchange.set(sent);
+        return sent.thenApply(resp -> {
+            try (InputStream raw = resp.body()) {
                 int sc = resp.statusCode();
+                if (sc == 401 || sc == 403) notifyInvalidTokenOnce();
+                T body = reader != null && sc >= 200 && sc < 300 ? reader.read(httpCache.decode(resp, raw)) : null;
+                return new Reply<>(sc, resp.headers(), body);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    /**
+     * Sends {@code request} like a roster page: in a scheduler slot, retrying transient failures. Returns the last
+     * response and throws if the last attempt failed with an I/O error.
+     */
+    private <T> Reply<T> sendReliably(String url, HttpRequest request, BodyReader<T> reader)
+            throws IOException, InterruptedException {
+        return withRetries(url, () -> sendAsync(request, reader, null), null);
+    }
+
+    /** Replays the cached page on 304, otherwise stream-parses the body. */
+    private Page toPage(String url, GitLabHttpCache.Entry validated, HttpResponse<InputStream> resp) throws IOException {
+        GitLabMetrics.PAGES_FETCHED.increment();
+        try (InputStream raw = resp.body()) {
+            int sc = resp.statusCode();
+            if (sc == 304 && validated != null) {
+                GitLabHttpCache.Entry cached = httpCache.hit(validated);
+                return new Page(sc, cached.users(), cached.headers());
+            }
+            if (sc < 200 || sc >= 300) return new Page(sc, null, resp.headers());
+            List<GitLabUser> users = new ArrayList<>();
+            long startedNanos = System.nanoTime();
+            readUsers(httpCache.decode(resp, raw), users);
+            GitLabMetrics.PAGE_PARSE.recordSince(startedNanos);
+            httpCache.miss();
+            return new Page(sc, users, resp.headers());
+        }
+    }
+
+    /** Walks an offset-paginated listing; returns an empty listing on any error. */
+    private Listing fetchUsersPaged(Function<Integer, String> urlForPage,
+                                    GitLabSettingsState settings,
+                                    int perPage,
+                                    String contextLogName) {
+        Listing all = new Listing();
+        try {
+            ProgressManager.checkCanceled();
+            Page first = fetchPageReliably(urlForPage.apply(1), settings, null);
+            int sc = first.status();
+            if (sc == 401 || sc == 403) {
+                notifyInvalidTokenOnce();
+                log.warn("{} fetch unauthorized/forbidden status={} page=1", contextLogName, sc);
+                return new Listing();
+            }
+            if (first.users() == null) {
+                log.warn("{} fetch failed status={} page=1", contextLogName, sc);
+                return all;
+            }
+            all.add(urlForPage.apply(1), first);
+            if (first.users().size() < perPage) return all; // single page
+
+            // GitLab omits X-Total-Pages for very large result sets; walk pages one by one in that case
+            int totalPages = first.headers().firstValue("X-Total-Pages").map(GitLabApiClient::parseIntOrNegative).orElse(-1);
+            boolean ok = totalPages > 1
+                    ? fetchPagesConcurrently(urlForPage, settings, Math.min(totalPages, MAX_PAGES), contextLogName, all)
+                    : fetchPagesSequentially(urlForPage, settings, perPage, contextLogName, all);
+            if (!ok) return new Listing();
+        } catch (ProcessCanceledException pce) {
+            throw pce;
+        } catch (IOException | InterruptedException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            log.warn("{} fetch error", contextLogName, e);
+            return new Listing();
+        } catch (Exception ex) {
+            log.warn("Unexpected {} fetch error", contextLogName, ex);
+            return new Listing();
+        }
+        return all;
+    }
+
+    /**
+     * Fetches pages 2..N in order, stopping at the first short page. Returns false if access was denied and throws
+     * if a page still fails after retries.
+     */
+    private boolean fetchPagesSequentially(Function<Integer, String> urlForPage,
+                                           GitLabSettingsState settings,
+                                           int perPage,
+                                           String contextLogName,
+                                           Listing all) throws IOException, InterruptedException {
+        for (int page = 2; page <= MAX_PAGES; page++) {
+            // Honour cancellation of the calling background task between pages
+            ProgressManager.checkCanceled();
+            String url = urlForPage.apply(page);
+            Page result = fetchPageReliably(url, settings, null);
+            int sc = result.status();
+            if (sc == 401 || sc == 403) {
+                notifyInvalidTokenOnce();
+                log.warn("{} fetch unauthorized/forbidden status={} page={}", contextLogName, sc, page);
+                return false;
+            }
+            if (result.users() == null) {
+                // A truncated roster must never pass for the complete one
+                throw new IOException(contextLogName + " fetch failed status=" + sc + " page=" + page);
+            }
+            all.add(url, result);
+            if (result.users().size() < perPage) return true; // last page
+        }
+        return true;
+    }
+
+    /**
+     * Fetches pages 2..totalPages with as many requests in flight as the {@link RequestScheduler} allows, at most
+     * {@link GitLabSettingsState#maxConcurrentRequests}, and appends them in page order. A page that fails is retried
+     * on its own; if it still fails, the whole listing fails like the sequential walk. Returns false if access was
+     * denied.
+     */
+    private boolean fetchPagesConcurrently(Function<Integer, String> urlForPage,
+                                           GitLabSettingsState settings,
+                                           int totalPages,
+                                           String contextLogName,
+                                           Listing all) throws IOException, InterruptedException {
+        List<CompletableFuture<Page>> inFlight = new ArrayList<>(totalPages - 1);
+        try {
+            for (int page = 2; page <= totalPages; page++) {
+                inFlight.add(fetchPageAsync(urlForPage.apply(page), settings));
+            }
+            for (int i = 0; i < inFlight.size(); i++) {
+                int page = i + 2;
+                String url = urlForPage.apply(page);
+                Page result = fetchPageReliably(url, settings, inFlight.get(i));
+                int sc = result.status();
                 if (sc == 401 || sc == 403) {
                     notifyInvalidTokenOnce();
                     log.warn("{} fetch unauthorized/forbidden status={} page={}", contextLogName, sc, page);
-                    return Collections.emptyList();
+                    return false;
                 }
-                if (sc >= 200 && sc < 300) {
-                    List<GitLabUser> pageUsers = mapper.readValue(resp.body(), new TypeReference<List<GitLabUser>>(){});
-                    if (pageUsers.isEmpty()) break;
-                    all.addAll(pageUsers);
-                    if (pageUsers.size() < perPage) break; // last page
-                    page++;
-                    if (page > 1000) break; // safety cap
-                } else {
-                    log.warn("{} fetch failed status={} page={}", contextLogName, sc, page);
-                    break;
+                if (result.users() == null) {
+                    throw new IOException(contextLogName + " fetch failed status=" + sc + " page=" + page);
                 }
+                if (result.users().isEmpty()) break;
+                all.add(url, result);
+            }
+            return true;
+        } finally {
+            // Pages past an early exit (failure, denial or an empty page) are never read; no-op for finished ones
+            inFlight.forEach(f -> f.cancel(true));
+        }
+    }
+
+    /**
+     * Follows keyset pagination ({@code pagination=keyset&order_by=id}) through the {@code Link: rel="next"}
+     * header. Returns null if the endpoint rejects keyset pagination so the caller can fall back to offsets, and
+     * throws if any page fails so a partial listing is never mistaken for a complete one.
+     */
+    private Listing fetchUsersKeyset(String firstUrl, GitLabSettingsState settings, String contextLogName)
+            throws IOException, InterruptedException {
+        Listing all = new Listing();
+        String url = firstUrl;
+        for (int page = 1; url != null && page <= MAX_PAGES; page++) {
+            ProgressManager.checkCanceled();
+            Page result = fetchPageReliably(url, settings, null);
+            int sc = result.status();
+            if (sc == 401 || sc == 403) {
+                notifyInvalidTokenOnce();
+                throw new IOException(contextLogName + " fetch unauthorized/forbidden status=" + sc + " page=" + page);
             }
+            if (page == 1 && (sc == 400 || sc == 405 || sc == 422)) {
+                log.info("{} keyset pagination not supported (status={}); using offset pagination", contextLogName, sc);
+                return null;
+            }
+            if (result.users() == null) {
+                throw new IOException(contextLogName + " fetch failed status=" + sc + " page=" + page);
+            }
+            if (result.users().isEmpty()) break;
+            all.add(url, result);
+            url = nextLink(result.headers());
+        }
+        return all;
+    }
+
+    /** Runs a keyset listing, falling back to offset pages; returns null on failure. */
+    private Listing fetchUsersKeysetOrPaged(String filters, GitLabSettingsState settings, int perPage, String contextLogName) {
+        try {
+            Listing users = fetchUsersKeyset(filters + "&pagination=keyset&order_by=id&sort=asc", settings, contextLogName);
+            if (users != null) return users;
+        } catch (ProcessCanceledException pce) {
+            throw pce;
         } catch (IOException | InterruptedException e) {
             if (e instanceof InterruptedException) Thread.currentThread().interrupt();
             log.warn("{} fetch error", contextLogName, e);
-            return Collections.emptyList();
+            return null;
         } catch (Exception ex) {
             log.warn("Unexpected {} fetch error", contextLogName, ex);
-            return Collections.emptyList();
+            return null;
+        }
+        return fetchUsersPaged(page -> filters + "&page=" + page, settings, perPage, contextLogName);
+    }
+
+    /** Extracts the {@code rel="next"} target from an RFC 8288 Link header, or null on the last page. */
+    static String nextLink(HttpHeaders headers) {
+        for (String header : headers.allValues("Link")) {
+            for (String link : header.split(",")) {
+                int lt = link.indexOf('<');
+                int gt = link.indexOf('>', lt + 1);
+                if (lt < 0 || gt < 0) continue;
+                String params = link.substring(gt + 1);
+                if (params.contains("rel=\"next\"") || params.contains("rel=next")) {
+                    return link.substring(lt + 1, gt).trim();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Streams a JSON array of user objects straight into {@code sink}, reading only id, username, name, avatar URL,
+     * state and bot flag, and skipping every other field without materializing it. Returns the number of users read.
+     */
+    int readUsers(InputStream body, List<GitLabUser> sink) throws IOException {
+        int count = 0;
+        try (JsonParser p = mapper.getFactory().createParser(body)) {
+            if (p.nextToken() != JsonToken.START_ARRAY) throw new IOException("Expected a JSON array of users");
+            while (p.nextToken() == JsonToken.START_OBJECT) {
+                long id = 0L;
+                String username = null;
+                String name = null;
+                String avatarUrl = null;
+                String state = null;
+                boolean bot = false;
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = p.currentName();
+                    JsonToken value = p.nextToken();
+                    switch (field) {
+                        case "id": id = p.getValueAsLong(); break;
+                        case "username": username = p.getValueAsString(); break;
+                        case "name": name = p.getValueAsString(); break;
+                        case "avatar_url": avatarUrl = p.getValueAsString(); break;
+                        case "state": state = p.getValueAsString(); break;
+                        case "bot": bot = p.getValueAsBoolean(); break;
+                        default: if (value.isStructStart()) p.skipChildren();
+                    }
+                }
+                if (username == null) continue; // not a usable user record
+                sink.add(GitLabUser.builder().id(id).username(username).name(name)
+                        .avatarUrl(avatarUrl).state(state).bot(bot).build());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Waits for a response while staying responsive to cancellation of the calling task, which abandons it. */
+    private static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+        while (true) {
+            try {
+                ProgressManager.checkCanceled();
+                return future.get(CANCEL_POLL_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ignored) {
+                // poll cancellation again
+            } catch (ProcessCanceledException | InterruptedException ex) {
+                future.cancel(true);
+                throw ex;
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof UncheckedIOException unchecked) throw unchecked.getCause();
+                if (cause instanceof IOException io) throw io;
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    private static int parseIntOrNegative(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            return -1;
         }
-        return all;
     }
 
     /**
-     * Lists all members of a group (including inherited) using /groups/{id}/members/all with pagination,
-     * or all active users using /users?active=true if groupId is null/blank.
-     * Returns an empty list on any error. Requires a private token with appropriate access.
+     * Lists the users of one source: all members of a group or project (including inherited) via
+     * /groups|projects/{id}/members/all, or all active users via /users?active=true. In GraphQL fetch mode member
+     * rosters come from /api/graphql instead, falling back to REST if the server cannot answer the query; active users
+     * always come from REST, which filters them on the server.
+     * Returns an empty roster on any error. Requires a private token with appropriate access.
+     * <p>
+     * The HTTP cache replays unchanged REST pages from the returned roster, so callers should keep that roster rather
+     * than a copy of it.
      */
-    public List<GitLabUser> listAllMembersOrActiveUsers() {
-        GitLabSettingsState settings = GitLabSettingsState.getInstance();
-        String groupId = settings.id;
+    public GitLabRoster listUsers(GitLabSource source) {
+        GitLabSettingsState settings = this.settings.get();
         String base = normalizeBase(settings.hostUrl);
-        final int perPage = 100;
-
-        if (groupId != null && !groupId.isBlank()) {
-            Function<Integer, String> urlForPage = page -> base + "/api/v4/groups/" + URLEncoder.encode(groupId, StandardCharsets.UTF_8)
-                    + "/members/all?per_page=" + perPage + "&page=" + page;
-            List<GitLabUser> users = fetchUsersPaged(urlForPage, settings, perPage, "Group members");
-            log.info("Fetched {} group members for group={}", users.size(), groupId);
-            return users;
+        final int perPage = settings.effectivePageSize();
+
+        if (settings.isGraphQlFetch()) {
+            List<GitLabUser> users = fetchUsersGraphQl(source, settings, base, perPage);
+            if (users != null) {
+                log.info("Fetched {} users for {} via GraphQL", users.size(), source.key());
+                return GitLabRoster.of(users);
+            }
+        }
+        Listing listing;
+        if (source.kind() != GitLabSource.Kind.USERS) {
+            Function<Integer, String> urlForPage = page -> membersUrl(base, source, perPage) + "&page=" + page;
+            String context = source.kind() == GitLabSource.Kind.GROUP ? "Group members" : "Project members";
+            listing = fetchUsersPaged(urlForPage, settings, perPage, context);
+            log.info("Fetched {} members for {}", listing.users.size(), source.key());
         } else {
-            // Use Users API with filters to exclude bots and internal users, and only active users
-            Function<Integer, String> urlForPage = page -> base
-                    + "/api/v4/users?active=true&without_project_bots=true&exclude_internal=true&per_page="
-                    + perPage + "&page=" + page;
-            List<GitLabUser> users = fetchUsersPaged(urlForPage, settings, perPage, "Active users");
-            log.info("Fetched {} active users after filtering", users.size());
-            return users;
+            // Keyset pagination stays fast at deep offsets; older servers fall back to page=N
+            listing = fetchUsersKeysetOrPaged(activeUsersUrl(base, perPage), settings, perPage, "Active users");
+            if (listing == null) listing = new Listing();
+            log.info("Fetched {} active users after filtering", listing.users.size());
+        }
+        GitLabRoster roster = GitLabRoster.of(listing.users);
+        httpCache.storeListing(listing.pages, roster);
+        return roster;
+    }
+
+    /**
+     * Lists a source through GraphQL, following {@code endCursor} one page at a time and keeping each user once.
+     * Returns null if GraphQL cannot serve this source (the users source, a server too old for the query, or a group
+     * or project not visible by its path), so the caller falls back to REST, and an empty list if a later page fails,
+     * so a partial roster is never returned.
+     */
+    private List<GitLabUser> fetchUsersGraphQl(GitLabSource source, GitLabSettingsState settings, String base, int pageSize) {
+        String context = "GraphQL " + source.key();
+        try {
+            if (source.kind() == GitLabSource.Kind.USERS) return null;
+            String fullPath = resolveFullPath(source, settings, base);
+            if (fullPath == null) return null;
+            String url = base + "/api/graphql";
+            List<GitLabUser> all = new ArrayList<>();
+            // Members reached through several relations (direct, inherited, shared) come back once per relation
+            Set<Long> seen = new HashSet<>();
+            String cursor = null;
+            for (int page = 1; page <= MAX_PAGES; page++) {
+                ProgressManager.checkCanceled();
+                String body = GitLabGraphQl.requestBody(mapper.getFactory(), source, fullPath, pageSize, cursor);
+                Page result = withRetries(url, () -> fetchGraphQlPageAsync(url, body, source, base, settings), null);
+                int sc = result.status();
+                if (sc == 401 || sc == 403) {
+                    notifyInvalidTokenOnce();
+                    log.warn("{} fetch unauthorized/forbidden status={} page={}", context, sc, page);
+                    return Collections.emptyList();
+                }
+                if (result.users() == null) {
+                    if (page == 1) {
+                        log.info("{} not available (status={}); using REST", context, sc);
+                        return null;
+                    }
+                    throw new IOException(context + " fetch failed status=" + sc + " page=" + page);
+                }
+                for (GitLabUser u : result.users()) {
+                    if (seen.add(u.getId())) all.add(u);
+                }
+                cursor = result.nextCursor();
+                if (cursor == null) break;
+            }
+            return all;
+        } catch (ProcessCanceledException pce) {
+            throw pce;
+        } catch (IOException | InterruptedException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            log.warn("{} fetch error", context, e);
+            return Collections.emptyList();
+        }
+    }
+
+    private CompletableFuture<Page> fetchGraphQlPageAsync(String url, String body, GitLabSource source, String base,
+                                                         GitLabSettingsState settings) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(10))
+                .header("Content-Type", "application/json")
+                .header("Accept-Encoding", "gzip")
+                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8));
+        if (settings.privateToken != null && !settings.privateToken.isBlank()) {
+            request.header("Authorization", "Bearer " + settings.privateToken.trim());
+        }
+        return scheduled(() -> {
+            long startedNanos = System.nanoTime();
+            return httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofInputStream())
+                    .thenApply(resp -> {
+                        GitLabMetrics.PAGE_LATENCY.recordSince(startedNanos);
+                        try {
+                            return toGraphQlPage(resp, source, base);
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    });
+        });
+    }
+
+    /** Stream-parses a GraphQL page; errors or a missing connection leave the page without users. */
+    private Page toGraphQlPage(HttpResponse<InputStream> resp, GitLabSource source, String base) throws IOException {
+        GitLabMetrics.PAGES_FETCHED.increment();
+        try (InputStream raw = resp.body()) {
+            int sc = resp.statusCode();
+            if (sc < 200 || sc >= 300) return new Page(sc, null, resp.headers());
+            List<GitLabUser> users = new ArrayList<>();
+            long startedNanos = System.nanoTime();
+            GitLabGraphQl.PageInfo info = GitLabGraphQl.readPage(mapper.getFactory(), httpCache.decode(resp, raw), base, users);
+            GitLabMetrics.PAGE_PARSE.recordSince(startedNanos);
+            if (info.error() != null || !info.connection()) {
+                log.warn("GraphQL {} answered without members: {}", source.key(), info.error() == null ? "not found" : info.error());
+                return new Page(sc, null, resp.headers());
+            }
+            return new Page(sc, users, resp.headers(), info.endCursor());
+        }
+    }
+
+    /**
+     * The full path GraphQL addresses a group or project by. A source configured by path is used as is; a numeric
+     * id is looked up once through REST and remembered. Returns null if the lookup fails.
+     */
+    private String resolveFullPath(GitLabSource source, GitLabSettingsState settings, String base)
+            throws IOException, InterruptedException {
+        if (!source.id().chars().allMatch(Character::isDigit)) return source.id();
+        String key = base + " " + source.key();
+        String known = fullPaths.get(key);
+        if (known != null) return known;
+        boolean project = source.kind() == GitLabSource.Kind.PROJECT;
+        String url = base + "/api/v4" + (project ? "/projects/" : "/groups/") + source.id()
+                + (project ? "?license=false" : "?with_projects=false");
+        String pathField = project ? "path_with_namespace" : "full_path";
+        Reply<String> resp = sendReliably(url, newRequest(url, settings).header("Accept-Encoding", "gzip").build(),
+                body -> readStringField(body, pathField));
+        if (resp.status() < 200 || resp.status() >= 300) {
+            log.warn("Full path lookup failed for {} status={}", source.key(), resp.status());
+            return null;
+        }
+        String fullPath = resp.body();
+        if (fullPath != null) fullPaths.put(key, fullPath);
+        return fullPath;
+    }
+
+    /** The string value of a top-level field of a JSON object, or null if it has none. */
+    private String readStringField(InputStream body, String name) throws IOException {
+        String found = null;
+        try (JsonParser p = mapper.getFactory().createParser(body)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) return null;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                if (field.equals(name)) {
+                    found = p.getValueAsString();
+                } else if (value.isStructStart()) {
+                    p.skipChildren();
+                }
+            }
         }
+        return found;
+    }
+
+    /**
+     * Lists active users created after {@code since} (delta for the instance-wide roster).
+     * Returns null on any error so callers can tell "no new users" from a failed request.
+     */
+    public List<GitLabUser> listActiveUsersCreatedAfter(Instant since) {
+        GitLabSettingsState settings = this.settings.get();
+        String base = normalizeBase(settings.hostUrl);
+        final int perPage = settings.effectivePageSize();
+        String filters = activeUsersUrl(base, perPage)
+                + "&created_after=" + URLEncoder.encode(since.toString(), StandardCharsets.UTF_8);
+        // Not cached: the next delta asks with a different created_after
+        Listing listing = fetchUsersKeysetOrPaged(filters, settings, perPage, "New active users");
+        if (listing == null) return null;
+        log.info("Fetched {} active users created after {}", listing.users.size(), since);
+        return listing.users;
+    }
+
+    /**
+     * Starts a server-side search of active users whose username, name or public email contains {@code query}, via
+     * /users?search=. Never blocks: while the {@link RequestScheduler} has no slot free, admission is asked again
+     * later on the application's scheduled executor, and transient failures are retried there with the same backoff
+     * as pages. Cancelling the returned future aborts the HTTP exchange and any attempt still to come. It fails with
+     * an IOException on a non-2xx status.
+     */
+    public CompletableFuture<List<GitLabUser>> searchUsersAsync(String query, int limit) {
+        GitLabSettingsState settings = this.settings.get();
+        String url = normalizeBase(settings.hostUrl) + "/api/v4/users?active=true&search="
+                + URLEncoder.encode(query, StandardCharsets.UTF_8) + "&per_page=" + limit;
+        HttpRequest request = newRequest(url, settings).header("Accept-Encoding", "gzip").build();
+        CompletableFuture<List<GitLabUser>> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<?>> exchange = new AtomicReference<>();
+        result.whenComplete((users, error) -> {
+            CompletableFuture<?> sent = exchange.get();
+            if (result.isCancelled() && sent != null) sent.cancel(true);
+        });
+        searchAttempt(url, request, 1, exchange, result);
+        return result;
+    }
+
+    /**
+     * Sends attempt {@code attempt} of a search and completes {@code result}, or schedules the next attempt. Runs on
+     * a shared pool, so it asks for a scheduler slot without waiting and comes back later if there is none.
+     */
+    private void searchAttempt(String url, HttpRequest request, int attempt,
+                               AtomicReference<CompletableFuture<?>> exchange, CompletableFuture<List<GitLabUser>> result) {
+        if (result.isDone()) return;
+        long admitInMs = scheduler.tryAcquire();
+        if (admitInMs > 0) {
+            AppExecutorUtil.getAppScheduledExecutorService().schedule(
+                    () -> searchAttempt(url, request, attempt, exchange, result), admitInMs, TimeUnit.MILLISECONDS);
+            return;
+        }
+        CompletableFuture<Reply<List<GitLabUser>>> reply;
+        try {
+            reply = admitted(() -> send(request, this::readUserList, exchange));
+        } catch (RuntimeException ex) {
+            result.completeExceptionally(ex);
+            return;
+        }
+        reply.whenComplete((resp, error) -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof UncheckedIOException unchecked) cause = unchecked.getCause();
+            boolean retry = attempt < RequestScheduler.MAX_ATTEMPTS && !result.isDone()
+                    && (resp != null ? RequestScheduler.isTransient(resp.status()) : cause instanceof IOException);
+            if (retry) {
+                long delayMs = scheduler.retryDelayMs(attempt, resp == null ? null : resp.headers());
+                log.info("Retrying {} in {} ms after {}", url, delayMs, resp == null ? cause.toString() : "status " + resp.status());
+                GitLabMetrics.PAGE_RETRIES.increment();
+                AppExecutorUtil.getAppScheduledExecutorService().schedule(
+                        () -> searchAttempt(url, request, attempt + 1, exchange, result), delayMs, TimeUnit.MILLISECONDS);
+            } else if (resp == null) {
+                result.completeExceptionally(cause);
+            } else if (resp.status() < 200 || resp.status() >= 300) {
+                result.completeExceptionally(new IOException("User search failed with status " + resp.status()));
+            } else {
+                result.complete(resp.body());
+            }
+        });
+    }
+
+    private List<GitLabUser> readUserList(InputStream body) throws IOException {
+        List<GitLabUser> users = new ArrayList<>();
+        readUsers(body, users);
+        return users;
+    }
+
+    /** Outcome of a cheap change check: HTTP status, the validator of the probed page and the X-Total count. */
+    public record MembersProbe(int status, String etag, int total) {
+        public boolean notModified() { return status == 304; }
+    }
+
+    /**
+     * Requests a single-entry page of a group or project members listing, sending {@code If-None-Match} when an ETag from a
+     * previous probe is known. The X-Total header (-1 if absent) catches additions and removals. Returns null on error.
+     */
+    public MembersProbe probeMembers(GitLabSource source, String ifNoneMatch) {
+        GitLabSettingsState settings = this.settings.get();
+        return probe(membersUrl(normalizeBase(settings.hostUrl), source, 1) + "&page=1", ifNoneMatch, settings,
+                "Members probe", source.key());
+    }
+
+    /** As {@link #probeMembers}, for the descendant groups of a group source. */
+    public MembersProbe probeDescendantGroups(GitLabSource source, String ifNoneMatch) {
+        GitLabSettingsState settings = this.settings.get();
+        return probe(groupUrl(normalizeBase(settings.hostUrl), source) + "/descendant_groups?per_page=1&page=1",
+                ifNoneMatch, settings, "Groups probe", source.key());
+    }
+
+    private MembersProbe probe(String url, String ifNoneMatch, GitLabSettingsState settings, String what, String key) {
+        HttpRequest.Builder request = newRequest(url, settings);
+        if (ifNoneMatch != null) request.header("If-None-Match", ifNoneMatch);
+        try {
+            Reply<Void> resp = sendReliably(url, request.build(), null);
+            int sc = resp.status();
+            if (sc != 304 && (sc < 200 || sc >= 300)) {
+                log.warn("{} failed for {} status={}", what, key, sc);
+                return null;
+            }
+            String etag = resp.headers().firstValue("ETag").orElse(sc == 304 ? ifNoneMatch : null);
+            int total = resp.headers().firstValue("X-Total").map(GitLabApiClient::parseIntOrNegative).orElse(-1);
+            return new MembersProbe(sc, etag, total);
+        } catch (IOException | InterruptedException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            log.warn("{} error for {}", what, key, e);
+            return null;
+        }
+    }
+
+    /**
+     * Lists a group source's group and all of its descendant groups at any depth, via /groups/{id} and
+     * /groups/{id}/descendant_groups, following X-Next-Page. Returns null on any error so a failed refresh keeps the
+     * previous tree.
+     */
+    public List<GitLabGroup> listGroupTree(GitLabSource source) {
+        GitLabSettingsState settings = this.settings.get();
+        String groupUrl = groupUrl(normalizeBase(settings.hostUrl), source);
+        List<GitLabGroup> groups = new ArrayList<>();
+        try {
+            if (!readGroupsFrom(groupUrl + "?with_projects=false", settings, groups, source)) return null;
+            for (int page = 1; page <= MAX_PAGES; page++) {
+                ProgressManager.checkCanceled();
+                Reply<List<GitLabGroup>> resp = sendForGroups(groupUrl + "/descendant_groups?per_page=100&page=" + page, settings);
+                if (!isSuccess(resp, source)) return null;
+                groups.addAll(resp.body());
+                if (resp.headers().firstValue("X-Next-Page").orElse("").isBlank()) break;
+            }
+            log.info("Fetched {} groups for {}", groups.size(), source.key());
+            return groups;
+        } catch (IOException | InterruptedException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            log.warn("Group tree error for {}", source.key(), e);
+            return null;
+        }
+    }
+
+    private boolean readGroupsFrom(String url, GitLabSettingsState settings, List<GitLabGroup> sink, GitLabSource source)
+            throws IOException, InterruptedException {
+        Reply<List<GitLabGroup>> resp = sendForGroups(url, settings);
+        if (!isSuccess(resp, source)) return false;
+        sink.addAll(resp.body());
+        return true;
+    }
+
+    private Reply<List<GitLabGroup>> sendForGroups(String url, GitLabSettingsState settings)
+            throws IOException, InterruptedException {
+        return sendReliably(url, newRequest(url, settings).header("Accept-Encoding", "gzip").build(), this::readGroups);
+    }
+
+    private boolean isSuccess(Reply<?> resp, GitLabSource source) {
+        int sc = resp.status();
+        if (sc >= 200 && sc < 300) return true;
+        log.warn("Group tree request failed for {} status={}", source.key(), sc);
+        return false;
+    }
+
+    /** Streams a group object or an array of them, reading only id, full path and name. */
+    private List<GitLabGroup> readGroups(InputStream body) throws IOException {
+        List<GitLabGroup> groups = new ArrayList<>();
+        try (JsonParser p = mapper.getFactory().createParser(body)) {
+            JsonToken first = p.nextToken();
+            if (first == JsonToken.START_OBJECT) {
+                readGroup(p, groups);
+                return groups;
+            }
+            if (first != JsonToken.START_ARRAY) throw new IOException("Expected a JSON array of groups");
+            while (p.nextToken() == JsonToken.START_OBJECT) readGroup(p, groups);
+        }
+        return groups;
+    }
+
+    private static void readGroup(JsonParser p, List<GitLabGroup> sink) throws IOException {
+        long id = 0L;
+        String fullPath = null;
+        String name = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            switch (field) {
+                case "id": id = p.getValueAsLong(); break;
+                case "full_path": fullPath = p.getValueAsString(); break;
+                case "name": name = p.getValueAsString(); break;
+                default: if (value.isStructStart()) p.skipChildren();
+            }
+        }
+        if (fullPath != null) sink.add(new GitLabGroup(id, fullPath, name));
+    }
+
+    /** Outcome of resolving one owner handle: whether it exists and, for users, the account state. */
+    public record OwnerLookup(boolean found, String state) {
+        public static final OwnerLookup NOT_FOUND = new OwnerLookup(false, null);
+    }
+
+    /** Looks up a user by exact username via /users?username=. Returns null on error. */
+    public OwnerLookup lookupUser(String username) {
+        GitLabSettingsState settings = this.settings.get();
+        String url = normalizeBase(settings.hostUrl) + "/api/v4/users?username="
+                + URLEncoder.encode(username, StandardCharsets.UTF_8);
+        try {
+            Reply<List<GitLabUser>> resp = sendReliably(url, newRequest(url, settings).build(), this::readUserList);
+            int sc = resp.status();
+            if (sc < 200 || sc >= 300) {
+                log.warn("User lookup failed for {} status={}", username, sc);
+                return null;
+            }
+            List<GitLabUser> users = resp.body();
+            return users.isEmpty() ? OwnerLookup.NOT_FOUND : new OwnerLookup(true, users.get(0).getState());
+        } catch (IOException | InterruptedException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            log.warn("User lookup error for {}", username, e);
+            return null;
+        }
+    }
+
+    /** Checks that a group exists by its full path, e.g. {@code parent/child}. Returns null on error. */
+    public OwnerLookup lookupGroup(String fullPath) {
+        GitLabSettingsState settings = this.settings.get();
+        String url = normalizeBase(settings.hostUrl) + "/api/v4/groups/"
+                + URLEncoder.encode(fullPath, StandardCharsets.UTF_8) + "?with_projects=false";
+        try {
+            Reply<Void> resp = sendReliably(url, newRequest(url, settings).build(), null);
+            int sc = resp.status();
+            if (sc == 404) return OwnerLookup.NOT_FOUND;
+            if (sc < 200 || sc >= 300) {
+                log.warn("Group lookup failed for {} status={}", fullPath, sc);
+                return null;
+            }
+            return new OwnerLookup(true, null);
+        } catch (IOException | InterruptedException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            log.warn("Group lookup error for {}", fullPath, e);
+            return null;
+        }
+    }
+
+    private static String groupUrl(String base, GitLabSource source) {
+        return base + "/api/v4/groups/" + URLEncoder.encode(source.id(), StandardCharsets.UTF_8);
+    }
+
+    private static String membersUrl(String base, GitLabSource source, int perPage) {
+        String collection = source.kind() == GitLabSource.Kind.PROJECT ? "/projects/" : "/groups/";
+        return base + "/api/v4" + collection + URLEncoder.encode(source.id(), StandardCharsets.UTF_8)
+                + "/members/all?per_page=" + perPage;
+    }
+
+    /** Users API filtered to active humans: excludes bots and internal users. */
+    private static String activeUsersUrl(String base, int perPage) {
+        return base + "/api/v4/users?active=true&without_project_bots=true&exclude_internal=true&per_page=" + perPage;
     }
 }
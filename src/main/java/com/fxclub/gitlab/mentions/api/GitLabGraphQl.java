@@ -0,0 +1,197 @@
+package com.fxclub.gitlab.mentions.api;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fxclub.gitlab.mentions.model.GitLabSource;
+import com.fxclub.gitlab.mentions.model.GitLabUser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Member roster queries for GitLab's GraphQL API and a streaming reader for their responses.
+ * <p>
+ * The queries select only the user fields a roster keeps (id, username, name, avatar URL, state and bot flag), so a
+ * member costs a fraction of the bytes of a REST member object with its access level, URLs and timestamps. They page
+ * with connection cursors ({@code first}/{@code after}) and ask for the same member relations as REST's
+ * {@code members/all}. There is no query for the users source: GraphQL's {@code users} cannot filter on state or
+ * bots, so it would transfer every blocked and internal account that the REST listing excludes on the server.
+ */
+final class GitLabGraphQl {
+    private static final String USER_FIELDS = "id username name avatarUrl state bot";
+    private static final String PAGE_INFO = "pageInfo { hasNextPage endCursor }";
+
+    private static final String GROUP_MEMBERS = "query($fullPath: ID!, $first: Int, $after: String) {"
+            + " group(fullPath: $fullPath) {"
+            + " groupMembers(first: $first, after: $after, relations: [DIRECT, INHERITED, SHARED_FROM_GROUPS]) {"
+            + " " + PAGE_INFO + " nodes { user { " + USER_FIELDS + " } } } } }";
+    private static final String PROJECT_MEMBERS = "query($fullPath: ID!, $first: Int, $after: String) {"
+            + " project(fullPath: $fullPath) {"
+            + " projectMembers(first: $first, after: $after, relations: [DIRECT, INHERITED, INVITED_GROUPS]) {"
+            + " " + PAGE_INFO + " nodes { user { " + USER_FIELDS + " } } } } }";
+
+    /**
+     * What a response said besides its users.
+     *
+     * @param connection false if the response had no member connection, e.g. the group is not visible or the server
+     *                   rejected the query
+     * @param endCursor  cursor to pass as {@code after} for the next page; null on the last page
+     * @param error      first error message, if any
+     */
+    record PageInfo(boolean connection, String endCursor, String error) {}
+
+    private GitLabGraphQl() {}
+
+    /** The POST body for one page of the members of the group or project {@code source} at {@code fullPath}. */
+    static String requestBody(JsonFactory json, GitLabSource source, String fullPath, int first, String after)
+            throws IOException {
+        StringWriter out = new StringWriter(512);
+        try (JsonGenerator g = json.createGenerator(out)) {
+            g.writeStartObject();
+            g.writeStringField("query", switch (source.kind()) {
+                case GROUP -> GROUP_MEMBERS;
+                case PROJECT -> PROJECT_MEMBERS;
+                case USERS -> throw new IllegalArgumentException("No GraphQL roster query for " + source.key());
+            });
+            g.writeObjectFieldStart("variables");
+            g.writeStringField("fullPath", fullPath);
+            g.writeNumberField("first", first);
+            if (after != null) g.writeStringField("after", after);
+            g.writeEndObject();
+            g.writeEndObject();
+        }
+        return out.toString();
+    }
+
+    /**
+     * Streams the users of one response into {@code sink}, skipping everything but the page info and error messages.
+     * Relative avatar URLs, which GitLab returns for uploaded avatars, are resolved against {@code base}. A user who
+     * is a member through several relations appears once per relation; callers dedupe by id across pages.
+     */
+    static PageInfo readPage(JsonFactory json, InputStream body, String base, List<GitLabUser> sink) throws IOException {
+        try (JsonParser p = json.createParser(body)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) throw new IOException("Expected a GraphQL response object");
+            Reader reader = new Reader(p, base, sink);
+            reader.readObject();
+            return new PageInfo(reader.connection, reader.hasNextPage ? reader.endCursor : null, reader.error);
+        }
+    }
+
+    /** Walks the response depth-first; the queries above contain exactly one {@code nodes} list and page info. */
+    private static final class Reader {
+        private final JsonParser p;
+        private final String base;
+        private final List<GitLabUser> sink;
+        private boolean connection;
+        private boolean hasNextPage;
+        private String endCursor;
+        private String error;
+
+        Reader(JsonParser p, String base, List<GitLabUser> sink) {
+            this.p = p;
+            this.base = base;
+            this.sink = sink;
+        }
+
+        /** Reads the fields of the object whose START_OBJECT was just consumed. */
+        void readObject() throws IOException {
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                if ("nodes".equals(field) && value == JsonToken.START_ARRAY) {
+                    connection = true;
+                    while (p.nextToken() == JsonToken.START_OBJECT) readNode();
+                } else if ("pageInfo".equals(field) && value == JsonToken.START_OBJECT) {
+                    connection = true;
+                    readPageInfo();
+                } else if ("errors".equals(field) && value == JsonToken.START_ARRAY) {
+                    readErrors();
+                } else if (value == JsonToken.START_OBJECT) {
+                    readObject();
+                } else if (value.isStructStart()) {
+                    p.skipChildren();
+                }
+            }
+        }
+
+        /** A member node wraps its user in {@code user}, which is read by a nested call. */
+        private void readNode() throws IOException {
+            long id = 0L;
+            String username = null;
+            String name = null;
+            String avatarUrl = null;
+            String state = null;
+            boolean bot = false;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                switch (field) {
+                    case "user":
+                        if (value == JsonToken.START_OBJECT) readNode();
+                        break;
+                    case "id": id = parseGlobalId(p.getValueAsString()); break;
+                    case "username": username = p.getValueAsString(); break;
+                    case "name": name = p.getValueAsString(); break;
+                    case "avatarUrl": avatarUrl = absolute(p.getValueAsString()); break;
+                    // Stored lower-case like REST's states, whatever case the schema's enum uses
+                    case "state": state = lower(p.getValueAsString()); break;
+                    case "bot": bot = p.getValueAsBoolean(); break;
+                    default: if (value.isStructStart()) p.skipChildren();
+                }
+            }
+            if (username == null) return; // a member node whose user was read by the nested call, or a pending invite
+            sink.add(GitLabUser.builder().id(id).username(username).name(name)
+                    .avatarUrl(avatarUrl).state(state).bot(bot).build());
+        }
+
+        private void readPageInfo() throws IOException {
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                switch (field) {
+                    case "hasNextPage": hasNextPage = p.getValueAsBoolean(); break;
+                    case "endCursor": endCursor = p.getValueAsString(); break;
+                    default: if (value.isStructStart()) p.skipChildren();
+                }
+            }
+        }
+
+        private void readErrors() throws IOException {
+            while (p.nextToken() == JsonToken.START_OBJECT) {
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = p.currentName();
+                    JsonToken value = p.nextToken();
+                    if ("message".equals(field) && error == null) {
+                        error = p.getValueAsString();
+                    } else if (value.isStructStart()) {
+                        p.skipChildren();
+                    }
+                }
+            }
+        }
+
+        private String absolute(String url) {
+            if (url == null || url.isBlank() || !url.startsWith("/")) return url;
+            return base + url;
+        }
+    }
+
+    /** The numeric id of a global id such as {@code gid://gitlab/User/42}; 0 if it has none. */
+    static long parseGlobalId(String gid) {
+        if (gid == null) return 0L;
+        try {
+            return Long.parseLong(gid.substring(gid.lastIndexOf('/') + 1));
+        } catch (NumberFormatException ex) {
+            return 0L;
+        }
+    }
+
+    private static String lower(String s) {
+        return s == null ? null : s.toLowerCase(Locale.ROOT);
+    }
+}
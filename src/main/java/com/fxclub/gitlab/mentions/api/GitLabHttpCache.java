@@ -0,0 +1,148 @@
+package com.fxclub.gitlab.mentions.api;
+
+import com.fxclub.gitlab.mentions.model.GitLabRoster;
+import com.fxclub.gitlab.mentions.model.GitLabUser;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Conditional-request cache for paged user listings.
+ * <p>
+ * Remembers the ETag / Last-Modified validators of each page URL of a completed listing, together with where the
+ * page's users sit in the roster built from that listing. Requests carry {@code If-None-Match} /
+ * {@code If-Modified-Since}, and a 304 answer replays the page from that roster without touching the JSON again.
+ * The roster is the one the caller keeps, so the cache itself only holds validators and headers. Responses are
+ * requested gzip-compressed and inflated on the fly; the raw bytes are counted.
+ */
+public class GitLabHttpCache {
+    private static final int MAX_ENTRIES = 2048;
+
+    /**
+     * Validators of a cached page plus the headers (Link, X-Total-Pages) it carried, and its users as positions
+     * {@code [from, to)} of the listing's roster.
+     */
+    public record Entry(String etag, String lastModified, HttpHeaders headers, GitLabRoster roster, int from, int to) {
+        /** Materializes the page's users for replay. */
+        public List<GitLabUser> users() {
+            List<GitLabUser> users = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) users.add(roster.user(i));
+            return users;
+        }
+    }
+
+    /** One page of a listing in progress: its URL, response headers and users {@code [from, to)} of the listing. */
+    public record PageSlice(String url, HttpHeaders headers, int from, int to) {}
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    /** Page URLs stored per listing, keyed by its first page, so a listing that shrank drops its trailing pages. */
+    private final Map<String, List<String>> pagesByListing = new HashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+
+    /** Adds compression and conditional headers; returns the entry the validators came from, or null. */
+    public Entry prepare(HttpRequest.Builder request, String url) {
+        request.header("Accept-Encoding", "gzip");
+        Entry cached;
+        synchronized (entries) {
+            cached = entries.get(url);
+        }
+        if (cached == null) return null;
+        if (cached.etag() != null) request.header("If-None-Match", cached.etag());
+        if (cached.lastModified() != null) request.header("If-Modified-Since", cached.lastModified());
+        return cached;
+    }
+
+    /** Records a 304 answer for an entry obtained from {@link #prepare}. */
+    public Entry hit(Entry validated) {
+        hits.increment();
+        return validated;
+    }
+
+    /** Records a page that had to be downloaded. */
+    public void miss() {
+        misses.increment();
+    }
+
+    /**
+     * Remembers the pages of a completed listing that came with validators, pointing them into {@code roster}, the
+     * roster built from the whole listing. Only complete listings are stored, so a 304 always has users to replay.
+     */
+    public void storeListing(List<PageSlice> pages, GitLabRoster roster) {
+        if (pages.isEmpty()) return;
+        List<String> urls = new ArrayList<>(pages.size());
+        synchronized (entries) {
+            for (PageSlice page : pages) {
+                String etag = page.headers().firstValue("ETag").orElse(null);
+                String lastModified = page.headers().firstValue("Last-Modified").orElse(null);
+                if (etag == null && lastModified == null) {
+                    entries.remove(page.url());
+                } else {
+                    entries.put(page.url(), new Entry(etag, lastModified, page.headers(), roster, page.from(), page.to()));
+                    urls.add(page.url());
+                }
+            }
+            List<String> previous = pagesByListing.put(pages.get(0).url(), urls);
+            if (previous == null) return;
+            // Pages past the new end would keep the previous roster reachable
+            for (String url : previous) {
+                Entry stale = entries.get(url);
+                if (stale != null && stale.roster() != roster) entries.remove(url);
+            }
+        }
+    }
+
+    /** Wraps a response body so wire bytes are counted and gzip content is inflated. */
+    public InputStream decode(HttpResponse<?> response, InputStream raw) throws IOException {
+        InputStream counted = new FilterInputStream(raw) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) bytesReceived.increment();
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len) throws IOException {
+                int n = super.read(buf, off, len);
+                if (n > 0) bytesReceived.add(n);
+                return n;
+            }
+        };
+        boolean gzip = response.headers().firstValue("Content-Encoding")
+                .map(v -> v.trim().equalsIgnoreCase("gzip"))
+                .orElse(false);
+        return gzip ? new GZIPInputStream(counted, 8192) : counted;
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            pagesByListing.clear();
+        }
+    }
+
+    public long hitCount() { return hits.sum(); }
+
+    public long missCount() { return misses.sum(); }
+
+    public long bytesReceived() { return bytesReceived.sum(); }
+}
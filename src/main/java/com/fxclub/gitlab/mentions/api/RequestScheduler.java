@@ -0,0 +1,167 @@
+package com.fxclub.gitlab.mentions.api;
+
+import com.fxclub.gitlab.mentions.metrics.GitLabMetrics;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
+
+import java.net.http.HttpHeaders;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Admits the page requests of one client at a pace the server accepts.
+ * <p>
+ * Concurrency and request rate adapt AIMD-style: a throttled response (429 or 503) halves both, and each window of
+ * successful responses raises the concurrency by one, up to the configured maximum, and the rate by one request per
+ * second until it is unlimited again. {@code Retry-After} and an exhausted {@code RateLimit-Remaining} pause all
+ * requests until the server's reset time, and a nearly exhausted budget spreads the remaining requests over the
+ * time left. Retries of failed requests back off exponentially with random jitter.
+ */
+final class RequestScheduler {
+    static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = TimeUnit.SECONDS.toMillis(30);
+    /** Longest pause a server header can impose; anything longer is treated as a failure by the retry limit. */
+    private static final long MAX_PAUSE_MS = TimeUnit.MINUTES.toMillis(2);
+    private static final double THROTTLED_START_RATE = 10;
+    private static final double MIN_RATE = 0.5;
+    private static final double MAX_RATE = 50;
+    private static final double LOW_REMAINING_FRACTION = 0.1;
+    private static final long POLL_MS = 100;
+
+    private final IntSupplier maxConcurrency;
+    // All state below is guarded by this
+    private int limit;
+    private int inFlight;
+    private int successesInWindow;
+    /** Requests per second; infinite until the server first pushes back. */
+    private double ratePerSec = Double.POSITIVE_INFINITY;
+    /** {@link System#nanoTime()} before which no request may start. */
+    private long nextStartNanos = System.nanoTime();
+
+    RequestScheduler(IntSupplier maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /** Statuses worth retrying: throttling and the gateway errors GitLab returns while under load. */
+    static boolean isTransient(int status) {
+        return status == 429 || status == 500 || status == 502 || status == 503 || status == 504;
+    }
+
+    /** Blocks until a request may start; stays responsive to cancellation of the calling task. */
+    synchronized void acquire() {
+        try {
+            while (true) {
+                ProgressManager.checkCanceled();
+                long waitMs = tryAcquire();
+                if (waitMs == 0) return;
+                wait(waitMs);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ProcessCanceledException(ex);
+        }
+    }
+
+    /**
+     * Admits a request if one may start now and returns 0; otherwise returns how many milliseconds to wait before
+     * asking again. For callers that must not block, e.g. tasks on a shared pool.
+     */
+    synchronized long tryAcquire() {
+        int max = Math.max(1, maxConcurrency.getAsInt());
+        if (limit == 0 || limit > max) limit = max;
+        long now = System.nanoTime();
+        long waitNanos = nextStartNanos - now;
+        if (inFlight < limit && waitNanos <= 0) {
+            inFlight++;
+            if (!Double.isInfinite(ratePerSec)) nextStartNanos = now + (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSec);
+            return 0;
+        }
+        return inFlight >= limit ? POLL_MS : Math.min(POLL_MS, TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1);
+    }
+
+    /** Ends a request admitted by {@link #acquire()}; {@code status} is -1 and {@code headers} null after an I/O error. */
+    synchronized void release(int status, HttpHeaders headers) {
+        inFlight = Math.max(0, inFlight - 1);
+        long now = System.nanoTime();
+        if (status == 429 || status == 503) {
+            limit = Math.max(1, limit / 2);
+            ratePerSec = Double.isInfinite(ratePerSec) ? THROTTLED_START_RATE : Math.max(MIN_RATE, ratePerSec / 2);
+            successesInWindow = 0;
+            GitLabMetrics.THROTTLED_RESPONSES.increment();
+            pauseUntil(now + TimeUnit.MILLISECONDS.toNanos(retryAfterMs(headers)));
+        } else if ((status >= 200 && status < 300) || status == 304) {
+            if (++successesInWindow >= limit) {
+                successesInWindow = 0;
+                limit = Math.min(Math.max(1, maxConcurrency.getAsInt()), limit + 1);
+                if (!Double.isInfinite(ratePerSec)) ratePerSec = ratePerSec + 1 > MAX_RATE ? Double.POSITIVE_INFINITY : ratePerSec + 1;
+            }
+        }
+        if (headers != null) applyRateLimitHeaders(headers, now);
+        notifyAll();
+    }
+
+    /** How long to wait before retry {@code attempt} (1-based), at least as long as the server asked for. */
+    long retryDelayMs(int attempt, HttpHeaders headers) {
+        long ceiling = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(attempt, 16));
+        long jittered = ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+        return Math.max(jittered, retryAfterMs(headers));
+    }
+
+    synchronized int concurrencyLimit() { return limit; }
+
+    synchronized double ratePerSecond() { return ratePerSec; }
+
+    /** Honors GitLab's {@code RateLimit-Remaining}/{@code RateLimit-Reset} (epoch seconds) and {@code RateLimit-Limit}. */
+    private void applyRateLimitHeaders(HttpHeaders headers, long nowNanos) {
+        long remaining = longHeader(headers, "RateLimit-Remaining");
+        long resetEpoch = longHeader(headers, "RateLimit-Reset");
+        if (remaining < 0 || resetEpoch <= 0) return;
+        long untilResetMs = Math.min(MAX_PAUSE_MS, resetEpoch * 1000L - System.currentTimeMillis());
+        if (untilResetMs <= 0) return;
+        if (remaining == 0) {
+            pauseUntil(nowNanos + TimeUnit.MILLISECONDS.toNanos(untilResetMs));
+            return;
+        }
+        long budget = longHeader(headers, "RateLimit-Limit");
+        if (budget > 0 && remaining < budget * LOW_REMAINING_FRACTION) {
+            pauseUntil(nowNanos + TimeUnit.MILLISECONDS.toNanos(untilResetMs / remaining));
+        }
+    }
+
+    private static long longHeader(HttpHeaders headers, String name) {
+        try {
+            return headers.firstValueAsLong(name).orElse(-1L);
+        } catch (NumberFormatException ex) {
+            return -1L;
+        }
+    }
+
+    private void pauseUntil(long nanos) {
+        if (nanos - nextStartNanos > 0) nextStartNanos = nanos;
+    }
+
+    /** {@code Retry-After} as delta seconds or an HTTP date, capped; 0 if absent or unparsable. */
+    static long retryAfterMs(HttpHeaders headers) {
+        if (headers == null) return 0L;
+        String value = headers.firstValue("Retry-After").map(String::trim).orElse("");
+        if (value.isEmpty()) return 0L;
+        long ms;
+        try {
+            ms = TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+        } catch (NumberFormatException notSeconds) {
+            try {
+                Instant at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                ms = at.toEpochMilli() - System.currentTimeMillis();
+            } catch (DateTimeParseException unparsable) {
+                return 0L;
+            }
+        }
+        return Math.max(0L, Math.min(MAX_PAUSE_MS, ms));
+    }
+}
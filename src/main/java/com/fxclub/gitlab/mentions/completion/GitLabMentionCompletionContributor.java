@@ -1,27 +1,47 @@
 package com.fxclub.gitlab.mentions.completion;
 
+import com.fxclub.gitlab.mentions.metrics.GitLabMetrics;
+import com.fxclub.gitlab.mentions.model.GitLabGroup;
 import com.fxclub.gitlab.mentions.model.GitLabUser;
+import com.fxclub.gitlab.mentions.service.GitLabUserIndex;
 import com.fxclub.gitlab.mentions.service.GitLabUserService;
+import com.fxclub.gitlab.mentions.service.MentionFrecencyStore;
+import com.fxclub.gitlab.mentions.service.MentionMatcher;
+import com.fxclub.gitlab.mentions.settings.GitLabSettingsState;
+import com.intellij.codeInsight.AutoPopupController;
 import com.intellij.codeInsight.completion.*;
-import com.intellij.codeInsight.lookup.LookupElementBuilder;
+import com.intellij.codeInsight.lookup.LookupElement;
+import com.intellij.codeInsight.lookup.LookupElementWeigher;
+import com.intellij.codeInsight.lookup.LookupManager;
+import com.intellij.codeInsight.lookup.WeighingContext;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.patterns.PlatformPatterns;
 import com.intellij.psi.PsiFile;
 import com.intellij.util.ProcessingContext;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongToIntFunction;
 
 /**
- * Provides @mention completion in Markdown and CODEOWNERS files using a local members cache.
+ * Provides @user and @group/subgroup completion using a local members cache: in Markdown and CODEOWNERS files, the commit message
+ * editor, GitLab CI YAML and TODO/FIXME comments of any language. See {@link MentionContextDetector}.
  */
 @Slf4j
 public class GitLabMentionCompletionContributor extends CompletionContributor {
 
     public GitLabMentionCompletionContributor() {
-        // Register a single provider; plugin.xml creates instances for each language we declared
+        // Register a single provider; plugin.xml registers the contributor for any language
         extend(
             CompletionType.BASIC,
             PlatformPatterns.psiElement(),
@@ -30,81 +50,143 @@ public class GitLabMentionCompletionContributor extends CompletionContributor {
     }
 
     private static class Provider extends CompletionProvider<CompletionParameters> {
+        /** Below this many cached matches the server is searched too, e.g. for users outside the configured sources. */
+        private static final int MIN_LOCAL_HITS = 3;
+        /** Shorter prefixes would match a large part of the instance. */
+        private static final int MIN_SERVER_QUERY_LENGTH = 2;
+        private static final int[] NO_HITS = new int[0];
+
         @Override
         protected void addCompletions(@NotNull CompletionParameters p,
                                       @NotNull ProcessingContext c,
                                       @NotNull CompletionResultSet r) {
             PsiFile original = p.getOriginalFile();
-            boolean isMarkdownFile = original.getName().toLowerCase().endsWith(".md")
-                                  || original.getName().toLowerCase().endsWith(".mdx");
-            boolean isCodeowners = original.getName().equalsIgnoreCase("CODEOWNERS");
-            if (!isMarkdownFile && !isCodeowners) return;
+            // Cached per file type: ordinary code completion leaves here without touching the document
+            MentionContextDetector.Applicability applicability = MentionContextDetector.applicability(original);
+            if (applicability == MentionContextDetector.Applicability.NONE) return;
 
             Document doc = p.getEditor().getDocument();
             int offset = p.getOffset();
-            CharSequence cs = doc.getCharsSequence();
-            Integer atPos = findAtPrefixStart(cs, offset);
-            if (atPos == null) return;
+            int atPos = MentionTokenScanner.findAtPrefixStart(doc, offset);
+            if (atPos < 0) return;
 
-            String userPrefix = cs.subSequence(atPos + 1, offset).toString();
+            String userPrefix = doc.getCharsSequence().subSequence(atPos + 1, offset).toString();
             if (userPrefix.isEmpty()) return;
+            if (!MentionContextDetector.isMentionContext(applicability, original, p.getPosition(), offset)) return;
 
-            GitLabUserService service = ApplicationManager.getApplication().getService(GitLabUserService.class);
-            // Synchronous warm-up: call ensureGroupMembersLoaded if available, otherwise fallback to forceReloadMembers
+            long startedNanos = System.nanoTime();
             try {
-                service.getClass().getMethod("ensureGroupMembersLoaded").invoke(service);
-            } catch (Exception reflectError) {
-                // Fallback to a synchronous reload
-                service.forceReloadMembers();
+                addMentions(original, p.getEditor(), atPos, userPrefix, r);
+            } finally {
+                GitLabMetrics.COMPLETION.recordSince(startedNanos);
             }
-            List<GitLabUser> fromGroup = service.filterGroupMembers(userPrefix);
-            if (fromGroup.isEmpty()) return;
+        }
+
+        private static void addMentions(PsiFile original, Editor editor, int atPos, String userPrefix, CompletionResultSet r) {
+            GitLabUserService service = ApplicationManager.getApplication().getService(GitLabUserService.class);
+            // Serve the current snapshot without I/O and refresh stale data in the background
+            service.refreshInBackgroundIfStale();
+            LongToIntFunction boosts = MentionFrecencyStore.getInstance(original.getProject()).boosts();
+            GitLabUserIndex index = service.getIndex();
+            // Past the first '/' only groups can match; before it, top-level groups complete alongside users
+            int[] hits = userPrefix.indexOf('/') < 0
+                    ? index.searchPositions(userPrefix, GitLabSettingsState.getInstance().maxUsersPerQuery, boosts)
+                    : NO_HITS;
+            List<GitLabGroup> groups = service.filterGroups(userPrefix);
+            boolean askServer = userPrefix.indexOf('/') < 0 && userPrefix.length() >= MIN_SERVER_QUERY_LENGTH
+                    && hits.length < MIN_LOCAL_HITS;
+            (hits.length == 0 && groups.isEmpty() ? GitLabMetrics.COMPLETION_CACHE_MISSES : GitLabMetrics.COMPLETION_CACHE_HITS).increment();
+            if (hits.length == 0 && groups.isEmpty() && !askServer) return;
 
-            // Use case-insensitive prefix matcher so subsequent attempts work reliably
-            r = r.withPrefixMatcher(new PlainPrefixMatcher(userPrefix, false));
+            // Match and order items like the service does, so fuzzy hits survive and ranking is not re-sorted
+            r = r.withPrefixMatcher(new MentionPrefixMatcher(userPrefix, index))
+                 .withRelevanceSorter(CompletionSorter.emptySorter().weigh(new MentionRankWeigher(boosts, index)));
             // Keep completion session alive while the prefix changes
             r.restartCompletionOnAnyPrefixChange();
 
-            for (GitLabUser u : fromGroup) {
-                String username = u.getUsername();
-                if (username.isBlank()) continue;
-                String label = (u.getName() == null || u.getName().isBlank()) ? username : u.getName();
-                r.addElement(
-                    LookupElementBuilder.create(username)
-                        .withPresentableText(label)
-                        .withTypeText("@" + username + " • GitLab", true)
-                        .withLookupString("@" + username)
-                        .withInsertHandler((context, item) -> {
-                            Document d = context.getDocument();
-                            int start = context.getStartOffset();
-                            int end = context.getTailOffset();
-                            CharSequence cur = d.getCharsSequence();
-                            boolean hasAtBefore = start > 0 && cur.charAt(start - 1) == '@';
-                            String handle = hasAtBefore ? username : ("@" + username);
-                            d.replaceString(start, end, handle);
-                            context.getEditor().getCaretModel().moveToOffset(start + handle.length());
-                        })
-                );
+            // Item presentations are described once per roster snapshot and reused by every keystroke after that
+            MentionLookupElements elements = MentionLookupElements.forIndex(index);
+            List<LookupElement> batch = new ArrayList<>(hits.length + groups.size());
+            for (int i : hits) {
+                LookupElement element = elements.user(i);
+                if (element != null) batch.add(element);
             }
+            for (GitLabGroup g : groups) batch.add(elements.group(g));
+            r.addAllElements(batch);
+            if (!askServer) return;
+
+            List<GitLabUser> remote = service.cachedServerSearch(userPrefix);
+            if (remote == null) {
+                // Never wait for the server here: completion runs again once the answer is cached
+                restartWhenAnswered(service.searchServerAsync(userPrefix), original.getProject(), editor, atPos, userPrefix);
+                return;
+            }
+            Set<Long> shown = new HashSet<>();
+            for (int i : hits) shown.add(index.roster().id(i));
+            List<LookupElement> found = new ArrayList<>();
+            for (GitLabUser u : remote) {
+                if (!shown.add(u.getId())) continue;
+                int i = index.indexOfUsername(u.getUsername());
+                LookupElement element = i >= 0 && index.roster().id(i) == u.getId()
+                        ? elements.user(i) : MentionLookupElements.createUser(u);
+                if (element != null) found.add(element);
+            }
+            r.addAllElements(found);
         }
 
         /**
-         * Finds the '@' that starts the mention prefix immediately before caret.
-         * Returns null if the caret is not within a mention token.
+         * Re-runs completion in {@code editor} once {@code search} has found users, so they are merged into the
+         * popup: a running completion restarts, and if the popup has closed for lack of items it is opened again,
+         * provided the caret is still in the mention that asked.
          */
-        private static Integer findAtPrefixStart(CharSequence seq, int caret) {
-            int i = caret - 1;
-            if (i < 0 || i >= seq.length()) return null;
-            while (i >= 0) {
-                char ch = seq.charAt(i);
-                if (ch == '@') return i;
-                if (Character.isLetterOrDigit(ch) || ch == '_' || ch == '.' || ch == '-' || ch == '/') {
-                    i--;
-                    continue;
+        private static void restartWhenAnswered(CompletableFuture<List<GitLabUser>> search, Project project,
+                                                Editor editor, int atPos, String userPrefix) {
+            search.thenAccept(users -> {
+                if (users.isEmpty()) return;
+                ApplicationManager.getApplication().invokeLater(() -> {
+                    if (editor.isDisposed() || !stillTyping(editor, atPos, userPrefix)) return;
+                    CompletionProgressIndicator current = CompletionServiceImpl.getCurrentCompletionProgressIndicator();
+                    if (current != null && current.getEditor() == editor) {
+                        current.scheduleRestart();
+                    } else if (LookupManager.getActiveLookup(editor) == null) {
+                        AutoPopupController.getInstance(project).scheduleAutoPopup(editor);
+                    }
+                }, ModalityState.stateForComponent(editor.getComponent()), project.getDisposed());
+            });
+        }
+
+        /** True if the caret still ends a mention that starts at {@code atPos} and extends {@code userPrefix}. */
+        private static boolean stillTyping(Editor editor, int atPos, String userPrefix) {
+            Document doc = editor.getDocument();
+            int offset = editor.getCaretModel().getOffset();
+            if (MentionTokenScanner.findAtPrefixStart(doc, offset) != atPos) return false;
+            return StringUtil.startsWithIgnoreCase(doc.getCharsSequence().subSequence(atPos + 1, offset).toString(), userPrefix);
+        }
+
+        /**
+         * Orders mention items best match first for the prefix currently typed. Runs for every item on every re-sort,
+         * so users are scored against the index's lower-cased text rather than their strings.
+         */
+        private static final class MentionRankWeigher extends LookupElementWeigher {
+            private final LongToIntFunction boosts;
+            private final GitLabUserIndex index;
+
+            MentionRankWeigher(LongToIntFunction boosts, GitLabUserIndex index) {
+                super("gitLabMentionRank");
+                this.boosts = boosts;
+                this.index = index;
+            }
+
+            @Override
+            public Integer weigh(@NotNull LookupElement element, @NotNull WeighingContext context) {
+                if (element.getObject() instanceof GitLabGroup group) {
+                    int score = MentionMatcher.score(group.fullPath(), context.itemPattern(element));
+                    return score == MentionMatcher.NO_MATCH ? Integer.MAX_VALUE : -score;
                 }
-                return null;
+                if (!(element.getObject() instanceof GitLabUser user)) return Integer.MAX_VALUE;
+                int score = MentionPrefixMatcher.score(index, user, context.itemPattern(element));
+                return score == MentionMatcher.NO_MATCH ? Integer.MAX_VALUE : -(score + boosts.applyAsInt(user.getId()));
             }
-            return null;
         }
     }
 }
\ No newline at end of file
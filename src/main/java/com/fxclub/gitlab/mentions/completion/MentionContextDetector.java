@@ -0,0 +1,104 @@
+package com.fxclub.gitlab.mentions.completion;
+
+import com.intellij.ide.todo.TodoConfiguration;
+import com.intellij.openapi.fileTypes.FileType;
+import com.intellij.openapi.fileTypes.PlainTextFileType;
+import com.intellij.openapi.vcs.ui.CommitMessage;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiComment;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.search.TodoPattern;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Decides where @mention completion applies. The contributor is registered for every language, so the decision is
+ * split in two: a per-file-type verdict computed once and cached, which rejects ordinary source files in O(1), and a
+ * PSI check for the remaining cases that only runs once an '@' token was found before the caret.
+ */
+final class MentionContextDetector {
+    enum Applicability {
+        /** Mentions anywhere in the file: Markdown, including merge request and issue templates. */
+        EVERYWHERE,
+        /** Plain text: only CODEOWNERS and MDX files by name, or the commit message editor. */
+        PLAIN_TEXT,
+        /** YAML: anywhere in GitLab configuration (.gitlab-ci.yml, files under .gitlab/), otherwise TODO comments. */
+        GITLAB_YAML,
+        /** Any other language: only inside TODO/FIXME comments. */
+        TODO_COMMENTS,
+        /** Binary and unknown files. */
+        NONE
+    }
+
+    private static final Map<FileType, Applicability> BY_FILE_TYPE = ContainerUtil.createConcurrentWeakMap();
+
+    private MentionContextDetector() {}
+
+    /** The cached verdict for the file's type; {@link Applicability#NONE} lets the caller return immediately. */
+    static @NotNull Applicability applicability(@NotNull PsiFile file) {
+        return BY_FILE_TYPE.computeIfAbsent(file.getFileType(), MentionContextDetector::classify);
+    }
+
+    /**
+     * Whether a mention typed at {@code position} should be completed, given the file-level verdict. Call only after
+     * an '@' token was found, since the comment check walks the PSI.
+     */
+    static boolean isMentionContext(@NotNull Applicability applicability, @NotNull PsiFile original,
+                                    @NotNull PsiElement position, int offset) {
+        switch (applicability) {
+            case EVERYWHERE:
+                return true;
+            case NONE:
+                return false;
+            case PLAIN_TEXT:
+                String name = original.getName();
+                return name.equalsIgnoreCase("CODEOWNERS") || endsWithIgnoreCase(name, ".mdx")
+                        || CommitMessage.isCommitMessage(original);
+            case GITLAB_YAML:
+                return isGitLabConfig(original.getVirtualFile()) || isInTodoComment(position, offset);
+            default:
+                // Commit message editors of VCS plugins may use their own language
+                return CommitMessage.isCommitMessage(original) || isInTodoComment(position, offset);
+        }
+    }
+
+    private static Applicability classify(FileType type) {
+        if (type.isBinary()) return Applicability.NONE;
+        if ("Markdown".equals(type.getName())) return Applicability.EVERYWHERE;
+        if (type instanceof PlainTextFileType) return Applicability.PLAIN_TEXT;
+        if ("YAML".equals(type.getName())) return Applicability.GITLAB_YAML;
+        return Applicability.TODO_COMMENTS;
+    }
+
+    private static boolean isGitLabConfig(VirtualFile file) {
+        if (file == null) return false;
+        if (file.getName().equals(".gitlab-ci.yml")) return true;
+        for (VirtualFile dir = file.getParent(); dir != null; dir = dir.getParent()) {
+            if (dir.getName().equals(".gitlab")) return true;
+        }
+        return false;
+    }
+
+    /** True inside a comment whose text before the caret matches one of the IDE's TODO patterns. */
+    private static boolean isInTodoComment(PsiElement position, int offset) {
+        PsiComment comment = PsiTreeUtil.getParentOfType(position, PsiComment.class, false);
+        if (comment == null) return false;
+        int start = comment.getTextRange().getStartOffset();
+        CharSequence text = comment.getText();
+        CharSequence beforeCaret = text.subSequence(0, Math.max(0, Math.min(text.length(), offset - start)));
+        for (TodoPattern todo : TodoConfiguration.getInstance().getTodoPatterns()) {
+            Pattern pattern = todo.getIndexPattern().getPattern();
+            if (pattern != null && pattern.matcher(beforeCaret).find()) return true;
+        }
+        return false;
+    }
+
+    private static boolean endsWithIgnoreCase(String s, String suffix) {
+        return s.regionMatches(true, s.length() - suffix.length(), suffix, 0, suffix.length());
+    }
+}
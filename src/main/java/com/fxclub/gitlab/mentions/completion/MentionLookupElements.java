@@ -0,0 +1,134 @@
+package com.fxclub.gitlab.mentions.completion;
+
+import com.fxclub.gitlab.mentions.model.GitLabGroup;
+import com.fxclub.gitlab.mentions.model.GitLabUser;
+import com.fxclub.gitlab.mentions.service.GitLabAvatarService;
+import com.fxclub.gitlab.mentions.service.GitLabUserIndex;
+import com.fxclub.gitlab.mentions.service.MentionFrecencyStore;
+import com.intellij.codeInsight.completion.InsertHandler;
+import com.intellij.codeInsight.completion.InsertionContext;
+import com.intellij.codeInsight.lookup.LookupElement;
+import com.intellij.codeInsight.lookup.LookupElementBuilder;
+import com.intellij.icons.AllIcons;
+import com.intellij.openapi.editor.Document;
+
+import javax.swing.*;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lookup items for one roster snapshot, indexed by roster position and described the first time a user is shown.
+ * <p>
+ * Completion restarts on every keystroke, so the presentation strings, avatar icon and insert handler of an item
+ * are reused across those restarts instead of being rebuilt for every match. Only those immutable parts are shared:
+ * a {@link LookupElement} is a user data holder that the lookup writes per-session state into, so every call gets a
+ * fresh one. Items hold no project or editor state: the insert handler finds both through its
+ * {@link InsertionContext}. The table is dropped as soon as the service publishes a new index.
+ */
+final class MentionLookupElements {
+    /** Groups are few, but the table lives as long as the user index; this bounds what group refreshes leave behind. */
+    private static final int MAX_CACHED_GROUPS = 4096;
+    private static final AtomicReference<MentionLookupElements> CURRENT =
+            new AtomicReference<>(new MentionLookupElements(GitLabUserIndex.EMPTY));
+
+    private final GitLabUserIndex index;
+    private final AtomicReferenceArray<Item> users;
+    private final Map<GitLabGroup, Item> groups = new ConcurrentHashMap<>();
+
+    private MentionLookupElements(GitLabUserIndex index) {
+        this.index = index;
+        this.users = new AtomicReferenceArray<>(index.size());
+    }
+
+    /** The table for {@code index}, replacing the one of an older snapshot. */
+    static MentionLookupElements forIndex(GitLabUserIndex index) {
+        while (true) {
+            MentionLookupElements current = CURRENT.get();
+            if (current.index == index) return current;
+            MentionLookupElements next = new MentionLookupElements(index);
+            if (CURRENT.compareAndSet(current, next)) return next;
+        }
+    }
+
+    /** A new element for the user at roster position {@code i}, or null if the user has no username. */
+    LookupElement user(int i) {
+        Item item = users.get(i);
+        if (item == null) {
+            item = describeUser(index.roster().user(i));
+            // A racing thread may have described the user first; either one can be used
+            if (!users.compareAndSet(i, null, item)) item = users.get(i);
+        }
+        return item == null ? null : item.toElement();
+    }
+
+    /** A new element for {@code group}. */
+    LookupElement group(GitLabGroup group) {
+        Item item = groups.get(group);
+        if (item == null) {
+            if (groups.size() >= MAX_CACHED_GROUPS) groups.clear();
+            item = groups.computeIfAbsent(group, MentionLookupElements::describeGroup);
+        }
+        return item.toElement();
+    }
+
+    /** An element for a user outside the snapshot, e.g. from a server search; not cached. */
+    static LookupElement createUser(GitLabUser u) {
+        Item item = describeUser(u);
+        return item == null ? null : item.toElement();
+    }
+
+    private static Item describeUser(GitLabUser u) {
+        String username = u.getUsername();
+        if (username == null || username.isBlank()) return null;
+        String label = (u.getName() == null || u.getName().isBlank()) ? username : u.getName();
+        long id = u.getId();
+        String mention = "@" + username;
+        // Placeholder until the avatar is loaded in the background; never blocks rendering
+        return new Item(u, username, mention, GitLabAvatarService.getInstance().iconFor(u), label,
+                u.isBot() ? " bot" : null, mention + " • GitLab", !u.isActive(), (context, element) -> {
+                    insertHandle(context, username);
+                    MentionFrecencyStore.getInstance(context.getProject()).recordMention(id);
+                });
+    }
+
+    private static Item describeGroup(GitLabGroup g) {
+        String path = g.fullPath();
+        return new Item(g, path, "@" + path, AllIcons.Nodes.Folder, path,
+                g.name() == null || g.name().equals(g.path()) ? null : "  " + g.name(), "GitLab group", false,
+                // Typing '/' after the inserted path continues with its subgroups
+                (context, element) -> insertHandle(context, path));
+    }
+
+    /**
+     * The immutable parts of an item, which each completion session turns into its own element.
+     *
+     * @param lookupString the handle with its '@', so typing the '@' keeps the item matched
+     */
+    private record Item(Object object, String handle, String lookupString, Icon icon, String label, String tail,
+                        String typeText, boolean strikeout, InsertHandler<LookupElement> insertHandler) {
+        LookupElement toElement() {
+            return LookupElementBuilder.create(object, handle)
+                    .withIcon(icon)
+                    .withPresentableText(label)
+                    .withTailText(tail, true)
+                    .withStrikeoutness(strikeout)
+                    .withTypeText(typeText, true)
+                    .withLookupString(lookupString)
+                    .withInsertHandler(insertHandler);
+        }
+    }
+
+    /** Replaces the typed token with {@code @handle}, reusing an '@' already in the document. */
+    private static void insertHandle(InsertionContext context, String handle) {
+        Document d = context.getDocument();
+        int start = context.getStartOffset();
+        int end = context.getTailOffset();
+        boolean hasAtBefore = start > 0 && d.getCharsSequence().charAt(start - 1) == '@';
+        String text = hasAtBefore ? handle : ("@" + handle);
+        d.replaceString(start, end, text);
+        context.getEditor().getCaretModel().moveToOffset(start + text.length());
+    }
+}
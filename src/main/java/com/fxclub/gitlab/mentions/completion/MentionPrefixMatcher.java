@@ -0,0 +1,50 @@
+package com.fxclub.gitlab.mentions.completion;
+
+import com.fxclub.gitlab.mentions.model.GitLabUser;
+import com.fxclub.gitlab.mentions.service.GitLabUserIndex;
+import com.fxclub.gitlab.mentions.service.MentionMatcher;
+import com.intellij.codeInsight.completion.PrefixMatcher;
+import com.intellij.codeInsight.lookup.LookupElement;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Keeps the lookup consistent with the service ranking: an item stays visible while its username or name matches
+ * the typed prefix under {@link MentionMatcher} rules, including fuzzy hits such as "jsm" for "John Smith". Users of
+ * the roster snapshot are scored against the index's lower-cased text, so matching allocates nothing per keystroke.
+ */
+final class MentionPrefixMatcher extends PrefixMatcher {
+    private final GitLabUserIndex index;
+
+    MentionPrefixMatcher(@NotNull String prefix, @NotNull GitLabUserIndex index) {
+        super(prefix);
+        this.index = index;
+    }
+
+    /**
+     * Relevance of a user for the prefix, or {@link MentionMatcher#NO_MATCH}, as {@link GitLabUserIndex#score} ranks
+     * it. Only users outside {@code index}, e.g. from a server search, are lower-cased here.
+     */
+    static int score(@NotNull GitLabUserIndex index, @NotNull GitLabUser user, @NotNull String prefix) {
+        int i = index.indexOfId(user.getId());
+        if (i >= 0) return index.score(i, prefix);
+        int su = MentionMatcher.score(user.getUsername(), prefix);
+        int sn = MentionMatcher.score(user.getName(), prefix);
+        return su == MentionMatcher.NO_MATCH ? sn : Math.max(su + 1, sn);
+    }
+
+    @Override
+    public boolean prefixMatches(@NotNull LookupElement element) {
+        if (element.getObject() instanceof GitLabUser user) return score(index, user, getPrefix()) != MentionMatcher.NO_MATCH;
+        return super.prefixMatches(element);
+    }
+
+    @Override
+    public boolean prefixMatches(@NotNull String name) {
+        return MentionMatcher.score(name, getPrefix()) != MentionMatcher.NO_MATCH;
+    }
+
+    @Override
+    public @NotNull PrefixMatcher cloneWithPrefix(@NotNull String prefix) {
+        return new MentionPrefixMatcher(prefix, index);
+    }
+}
@@ -0,0 +1,59 @@
+package com.fxclub.gitlab.mentions.completion;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.util.Key;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Finds the '@' that starts the mention token before the caret. The backward scan never looks further than GitLab's
+ * maximum username length, and it stops at the first character that cannot be part of a mention, so a line break
+ * always ends it. Its cost therefore does not depend on the document size.
+ */
+final class MentionTokenScanner {
+    /** GitLab's limit for usernames, which bounds the token the caret can be in. */
+    static final int MAX_TOKEN_LENGTH = 255;
+
+    private static final boolean[] ASCII_TOKEN_CHARS = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) ASCII_TOKEN_CHARS[c] = true;
+        for (char c = 'A'; c <= 'Z'; c++) ASCII_TOKEN_CHARS[c] = true;
+        for (char c = '0'; c <= '9'; c++) ASCII_TOKEN_CHARS[c] = true;
+        for (char c : new char[]{'_', '.', '-', '/'}) ASCII_TOKEN_CHARS[c] = true;
+    }
+
+    /**
+     * Last '@' found per document; completion restarts at an unchanged stamp and caret reuse it. Misses are not
+     * stored, so typing outside mentions does not write user data on every keystroke.
+     */
+    private record Scan(long stamp, int caret, int atPos) {}
+
+    private static final Key<Scan> LAST_SCAN = Key.create("gitlab.mentions.lastTokenScan");
+
+    private MentionTokenScanner() {}
+
+    /** Offset of the '@' starting the mention prefix immediately before {@code caret}, or -1 if there is none. */
+    static int findAtPrefixStart(@NotNull Document document, int caret) {
+        long stamp = document.getModificationStamp();
+        Scan last = document.getUserData(LAST_SCAN);
+        if (last != null && last.stamp() == stamp && last.caret() == caret) return last.atPos();
+        int atPos = scan(document.getCharsSequence(), caret);
+        if (atPos >= 0) document.putUserData(LAST_SCAN, new Scan(stamp, caret, atPos));
+        return atPos;
+    }
+
+    static int scan(@NotNull CharSequence seq, int caret) {
+        if (caret <= 0 || caret > seq.length()) return -1;
+        int limit = Math.max(0, caret - MAX_TOKEN_LENGTH - 1);
+        for (int i = caret - 1; i >= limit; i--) {
+            char ch = seq.charAt(i);
+            if (ch == '@') return i;
+            if (!isTokenChar(ch)) return -1;
+        }
+        return -1;
+    }
+
+    static boolean isTokenChar(char ch) {
+        return ch < 128 ? ASCII_TOKEN_CHARS[ch] : Character.isLetterOrDigit(ch);
+    }
+}
@@ -0,0 +1,172 @@
+package com.fxclub.gitlab.mentions.inspection;
+
+import com.fxclub.gitlab.mentions.model.GitLabRoster;
+import com.fxclub.gitlab.mentions.model.GitLabUser;
+import com.fxclub.gitlab.mentions.service.GitLabUserService;
+import com.fxclub.gitlab.mentions.service.OwnerHandleResolver;
+import com.intellij.codeInspection.InspectionManager;
+import com.intellij.codeInspection.LocalInspectionTool;
+import com.intellij.codeInspection.ProblemDescriptor;
+import com.intellij.codeInspection.ProblemHighlightType;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Flags CODEOWNERS owners GitLab would not accept: unknown users and groups, and blocked or deactivated users.
+ * <p>
+ * Usernames are checked against the cached roster with an exact hash lookup; handles it does not know are resolved
+ * in the background by {@link OwnerHandleResolver}, which re-highlights the file when answers arrive. Findings are
+ * cached per line text and reused while the roster and the resolver's answers for that line's handles are unchanged,
+ * so editing one line of a large file, or an answer arriving for one handle, only re-checks the lines concerned.
+ */
+public class CodeownersInspection extends LocalInspectionTool {
+    /** A problem on one line; offsets are relative to the line start. */
+    private record Finding(int start, int end, String message) {}
+
+    /** The findings of one line, with the {@link OwnerHandleResolver#stamp stamps} of the handles it resolved. */
+    private record Line(List<Finding> findings, List<String> resolved, long[] stamps) {
+        boolean isCurrent(OwnerHandleResolver resolver) {
+            for (int i = 0; i < stamps.length; i++) {
+                if (resolver.stamp(resolved.get(i)) != stamps[i]) return false;
+            }
+            return true;
+        }
+    }
+
+    private record LineCache(GitLabRoster roster, Map<String, Line> byLine) {}
+
+    private static final Key<LineCache> LINE_CACHE = Key.create("gitlab.mentions.codeownersLines");
+
+    @Override
+    public ProblemDescriptor @Nullable [] checkFile(@NotNull PsiFile file, @NotNull InspectionManager manager, boolean isOnTheFly) {
+        if (!file.getName().equalsIgnoreCase("CODEOWNERS")) return null;
+        Document doc = file.getViewProvider().getDocument();
+        if (doc == null) return null;
+        GitLabUserService users = ApplicationManager.getApplication().getService(GitLabUserService.class);
+        users.refreshInBackgroundIfStale();
+        GitLabRoster roster = users.getRoster();
+        // Without a roster every owner would be looked up one by one; wait for the first fetch instead
+        if (roster.isEmpty()) return null;
+        OwnerHandleResolver resolver = OwnerHandleResolver.getInstance();
+
+        LineCache previous = file.getUserData(LINE_CACHE);
+        Map<String, Line> reusable = previous != null && previous.roster() == roster ? previous.byLine() : Map.of();
+        Map<String, Line> byLine = new HashMap<>();
+        List<ProblemDescriptor> problems = new ArrayList<>();
+        CharSequence text = doc.getCharsSequence();
+        for (int line = 0; line < doc.getLineCount(); line++) {
+            ProgressManager.checkCanceled();
+            int lineStart = doc.getLineStartOffset(line);
+            int lineEnd = doc.getLineEndOffset(line);
+            if (!containsAt(text, lineStart, lineEnd)) continue;
+            String lineText = text.subSequence(lineStart, lineEnd).toString();
+            Line checked = byLine.get(lineText);
+            if (checked == null) {
+                checked = reusable.get(lineText);
+                if (checked == null || !checked.isCurrent(resolver)) checked = check(lineText, users, resolver, file);
+                byLine.put(lineText, checked);
+            }
+            for (Finding f : checked.findings()) {
+                problems.add(manager.createProblemDescriptor(file, new TextRange(lineStart + f.start(), lineStart + f.end()),
+                        f.message(), ProblemHighlightType.GENERIC_ERROR_OR_WARNING, isOnTheFly));
+            }
+        }
+        file.putUserData(LINE_CACHE, new LineCache(roster, byLine));
+        return problems.isEmpty() ? null : problems.toArray(ProblemDescriptor.EMPTY_ARRAY);
+    }
+
+    private static Line check(String line, GitLabUserService users, OwnerHandleResolver resolver, PsiFile file) {
+        List<Finding> findings = null;
+        List<int[]> handles = ownerHandles(line);
+        List<String> resolved = new ArrayList<>(handles.size());
+        long[] stamps = new long[handles.size()];
+        for (int[] range : handles) {
+            String handle = line.substring(range[0] + 1, range[1]);
+            String message;
+            GitLabUser user = handle.indexOf('/') < 0 ? users.findByUsername(handle) : null;
+            if (user != null) {
+                message = user.isActive() ? null : "GitLab user @" + handle + " is " + user.getState();
+            } else {
+                // Taken before resolving, so an answer arriving in between leaves the line stale rather than wrong
+                stamps[resolved.size()] = resolver.stamp(handle);
+                resolved.add(handle);
+                message = problemFor(handle, resolver.resolve(handle, file));
+            }
+            if (message == null) continue;
+            if (findings == null) findings = new ArrayList<>(1);
+            findings.add(new Finding(range[0], range[1], message));
+        }
+        return new Line(findings == null ? List.of() : findings, resolved, Arrays.copyOf(stamps, resolved.size()));
+    }
+
+    /** The problem with {@code handle} (without '@') given its resolution, or null if it is fine or not known yet. */
+    private static String problemFor(String handle, OwnerHandleResolver.Resolution resolution) {
+        if (resolution == null) return null;
+        switch (resolution.status()) {
+            case INACTIVE_USER:
+                return "GitLab user @" + handle + " is " + resolution.state();
+            case UNKNOWN:
+                return handle.indexOf('/') < 0
+                        ? "Unknown GitLab user or group @" + handle
+                        : "Unknown GitLab group @" + handle;
+            default:
+                return null;
+        }
+    }
+
+    private static boolean containsAt(CharSequence text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == '@') return true;
+        }
+        return false;
+    }
+
+    /**
+     * Ranges {@code [start, end)} of the {@code @user} and {@code @group/subgroup} owners on one CODEOWNERS line,
+     * including the '@'. Skips the path pattern, section headers such as {@code ^[Docs][2]}, role owners such as
+     * {@code @@maintainer}, email owners and comments.
+     */
+    static List<int[]> ownerHandles(String line) {
+        int n = line.length();
+        int i = 0;
+        while (i < n && Character.isWhitespace(line.charAt(i))) i++;
+        if (i >= n || line.charAt(i) == '#') return List.of();
+        if (line.charAt(i) == '^' && i + 1 < n && line.charAt(i + 1) == '[') i++;
+        if (line.charAt(i) == '[') {
+            int close = line.indexOf(']', i);
+            if (close < 0) return List.of();
+            i = close + 1;
+            if (i < n && line.charAt(i) == '[') {
+                close = line.indexOf(']', i);
+                if (close < 0) return List.of();
+                i = close + 1;
+            }
+        } else {
+            // The path pattern; spaces in it are escaped with a backslash
+            while (i < n && !Character.isWhitespace(line.charAt(i))) i += line.charAt(i) == '\\' ? 2 : 1;
+        }
+        List<int[]> handles = new ArrayList<>();
+        while (i < n) {
+            while (i < n && Character.isWhitespace(line.charAt(i))) i++;
+            if (i >= n || line.charAt(i) == '#') break;
+            int start = i;
+            while (i < n && !Character.isWhitespace(line.charAt(i))) i++;
+            if (line.charAt(start) == '@' && i - start > 1 && line.charAt(start + 1) != '@') {
+                handles.add(new int[]{start, i});
+            }
+        }
+        return handles;
+    }
+}
@@ -0,0 +1,69 @@
+package com.fxclub.gitlab.mentions.metrics;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide timings and counters for the fetch, index and completion paths, shown by the "Show Cached Users"
+ * action. Recording is a histogram bucket increment or a {@link LongAdder} add, cheap enough for every keystroke.
+ */
+public final class GitLabMetrics {
+    /** From sending a page request to its response headers (not-modified pages included). */
+    public static final LatencyHistogram PAGE_LATENCY = new LatencyHistogram("page request");
+    /** Streaming a page body into users; includes its transfer, since the body is parsed as it arrives. */
+    public static final LatencyHistogram PAGE_PARSE = new LatencyHistogram("page parse");
+    /** Fetching one source in full, all pages. */
+    public static final LatencyHistogram FULL_SYNC = new LatencyHistogram("full sync");
+    /** Merging the sources and building the search index and group trie. */
+    public static final LatencyHistogram INDEX_BUILD = new LatencyHistogram("index build");
+    public static final LatencyHistogram COMPLETION = new LatencyHistogram("addCompletions");
+    public static final LatencyHistogram SERVER_SEARCH = new LatencyHistogram("server search");
+
+    public static final LongAdder PAGES_FETCHED = new LongAdder();
+    public static final LongAdder FULL_SYNCS = new LongAdder();
+    /** Incremental refreshes, including those that found nothing new. */
+    public static final LongAdder INCREMENTAL_REFRESHES = new LongAdder();
+    public static final LongAdder FAILED_REFRESHES = new LongAdder();
+    /** Page requests repeated after a transient failure (429, 5xx or an I/O error). */
+    public static final LongAdder PAGE_RETRIES = new LongAdder();
+    /** 429 and 503 responses, each of which slows down the request scheduler. */
+    public static final LongAdder THROTTLED_RESPONSES = new LongAdder();
+    /** Completions the cached roster had matches for. */
+    public static final LongAdder COMPLETION_CACHE_HITS = new LongAdder();
+    public static final LongAdder COMPLETION_CACHE_MISSES = new LongAdder();
+    /** Server searches answered from the prefix cache without a request. */
+    public static final LongAdder SERVER_SEARCH_CACHE_HITS = new LongAdder();
+    public static final LongAdder SERVER_SEARCH_REQUESTS = new LongAdder();
+    public static final LongAdder SERVER_SEARCHES_CANCELLED = new LongAdder();
+
+    private static final List<LatencyHistogram> HISTOGRAMS =
+            List.of(PAGE_LATENCY, PAGE_PARSE, FULL_SYNC, INDEX_BUILD, COMPLETION, SERVER_SEARCH);
+    private static final List<LongAdder> COUNTERS = List.of(PAGES_FETCHED, FULL_SYNCS, INCREMENTAL_REFRESHES,
+            FAILED_REFRESHES, PAGE_RETRIES, THROTTLED_RESPONSES, COMPLETION_CACHE_HITS, COMPLETION_CACHE_MISSES, SERVER_SEARCH_CACHE_HITS,
+            SERVER_SEARCH_REQUESTS, SERVER_SEARCHES_CANCELLED);
+
+    private GitLabMetrics() {}
+
+    /** Multi-line report of all counters and histograms. */
+    public static String report() {
+        StringBuilder out = new StringBuilder();
+        out.append("Refreshes: ").append(FULL_SYNCS.sum()).append(" full / ")
+                .append(INCREMENTAL_REFRESHES.sum()).append(" incremental / ")
+                .append(FAILED_REFRESHES.sum()).append(" failed, ")
+                .append(PAGES_FETCHED.sum()).append(" pages, ")
+                .append(PAGE_RETRIES.sum()).append(" retries, ")
+                .append(THROTTLED_RESPONSES.sum()).append(" throttled\n");
+        out.append("Completion: ").append(COMPLETION_CACHE_HITS.sum()).append(" cache hits / ")
+                .append(COMPLETION_CACHE_MISSES.sum()).append(" misses\n");
+        out.append("Server search: ").append(SERVER_SEARCH_REQUESTS.sum()).append(" requests / ")
+                .append(SERVER_SEARCH_CACHE_HITS.sum()).append(" prefix cache hits / ")
+                .append(SERVER_SEARCHES_CANCELLED.sum()).append(" cancelled\n");
+        for (LatencyHistogram histogram : HISTOGRAMS) out.append(histogram.summary()).append('\n');
+        return out.toString();
+    }
+
+    public static void reset() {
+        for (LatencyHistogram histogram : HISTOGRAMS) histogram.reset();
+        for (LongAdder counter : COUNTERS) counter.reset();
+    }
+}
@@ -0,0 +1,112 @@
+package com.fxclub.gitlab.mentions.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-bucket latency histogram in the style of HdrHistogram: values in microseconds fall into power-of-two ranges
+ * split into {@value #SUB_BUCKETS} linear sub-buckets, so a percentile is off by at most 12.5% while recording is
+ * one array increment and no allocation. Covers 1 µs to about 19 hours; longer values land in the last bucket.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 36;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0L);
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String name() { return name; }
+
+    /** Records the time elapsed since {@code startNanos}, a {@link System#nanoTime()} reading. */
+    public void recordSince(long startNanos) {
+        recordNanos(System.nanoTime() - startNanos);
+    }
+
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0L, nanos / 1000L);
+        counts.incrementAndGet(bucketOf(micros));
+        count.increment();
+        sumMicros.add(micros);
+        maxMicros.accumulate(micros);
+    }
+
+    public long count() { return count.sum(); }
+
+    public long maxMicros() { return maxMicros.get(); }
+
+    public double meanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sumMicros.sum() / n;
+    }
+
+    /**
+     * Upper bound in microseconds of the bucket holding the {@code quantile} (0..1) of recorded values, or 0 if
+     * nothing was recorded. Concurrent recording may shift the answer by the values recorded meanwhile.
+     */
+    public long percentileMicros(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+        long rank = Math.max(1L, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return Math.min(upperBound(i), maxMicros.get());
+        }
+        return maxMicros.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        count.reset();
+        sumMicros.reset();
+        maxMicros.reset();
+    }
+
+    /** One line such as {@code "page request: n=12 p50=40.1 ms p90=81.9 ms p99=98.3 ms max=97.0 ms"}. */
+    public String summary() {
+        long n = count();
+        if (n == 0) return name + ": n=0";
+        return name + ": n=" + n
+                + " p50=" + millis(percentileMicros(0.50))
+                + " p90=" + millis(percentileMicros(0.90))
+                + " p99=" + millis(percentileMicros(0.99))
+                + " max=" + millis(maxMicros());
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) return (int) micros;
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+        int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /** Exclusive upper bound of a bucket, in microseconds. */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket + 1;
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BITS);
+        return ((long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS)) + width;
+    }
+
+    static String millis(long micros) {
+        return String.format(Locale.ROOT, "%.1f ms", micros / 1000.0);
+    }
+}
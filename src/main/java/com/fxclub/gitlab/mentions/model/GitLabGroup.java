@@ -0,0 +1,14 @@
+package com.fxclub.gitlab.mentions.model;
+
+/**
+ * A GitLab group or subgroup that can be mentioned as {@code @full/path}.
+ *
+ * @param fullPath path from the top-level group, e.g. {@code org/team/subteam}
+ * @param name     display name; may be null
+ */
+public record GitLabGroup(long id, String fullPath, String name) {
+    /** Last path segment, e.g. {@code subteam}. */
+    public String path() {
+        return fullPath.substring(fullPath.lastIndexOf('/') + 1);
+    }
+}
@@ -0,0 +1,189 @@
+package com.fxclub.gitlab.mentions.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable, columnar list of users.
+ * <p>
+ * Instead of one {@link GitLabUser} with four Strings per user, ids live in a {@code long[]} and all text fields are
+ * packed into one shared UTF-8 byte arena addressed by an offset array, plus one flag byte per user. A 100k-user
+ * roster is thus a handful of arrays rather than half a million objects. {@link GitLabUser} instances are
+ * materialized on demand, e.g. only for the results handed to completion.
+ */
+public final class GitLabRoster {
+    public static final GitLabRoster EMPTY = new Builder(0).build();
+
+    private static final int USERNAME = 0;
+    private static final int NAME = 1;
+    private static final int AVATAR_URL = 2;
+    private static final int STATE = 3;
+    private static final int FIELDS = 4;
+
+    private static final int FLAG_BOT = 1;
+    /** Bit {@code FLAG_NULL << field} marks a null field; empty strings are stored as zero-length fields. */
+    private static final int FLAG_NULL = 2;
+
+    private final long[] ids;
+    private final byte[] arena;
+    /** Field {@code f} of user {@code i} spans {@code [offsets[i*FIELDS+f], offsets[i*FIELDS+f+1])}. */
+    private final int[] offsets;
+    private final byte[] flags;
+
+    private GitLabRoster(long[] ids, byte[] arena, int[] offsets, byte[] flags) {
+        this.ids = ids;
+        this.arena = arena;
+        this.offsets = offsets;
+        this.flags = flags;
+    }
+
+    public static GitLabRoster of(List<GitLabUser> users) {
+        Builder builder = new Builder(users.size());
+        for (GitLabUser u : users) builder.add(u);
+        return builder.build();
+    }
+
+    public int size() { return ids.length; }
+
+    public boolean isEmpty() { return ids.length == 0; }
+
+    public long id(int i) { return ids[i]; }
+
+    public String username(int i) { return field(i, USERNAME); }
+
+    public String name(int i) { return field(i, NAME); }
+
+    public String avatarUrl(int i) { return field(i, AVATAR_URL); }
+
+    public String state(int i) { return field(i, STATE); }
+
+    public boolean isBot(int i) { return (flags[i] & FLAG_BOT) != 0; }
+
+    /** Creates a {@link GitLabUser} for position {@code i}; each call allocates a fresh instance. */
+    public GitLabUser user(int i) {
+        return GitLabUser.builder()
+                .id(ids[i])
+                .username(username(i))
+                .name(name(i))
+                .avatarUrl(avatarUrl(i))
+                .state(state(i))
+                .bot(isBot(i))
+                .build();
+    }
+
+    /** Materializes every user; meant for short-lived use such as replaying a cached page. */
+    public List<GitLabUser> toList() {
+        if (ids.length == 0) return Collections.emptyList();
+        List<GitLabUser> users = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) users.add(user(i));
+        return users;
+    }
+
+    /** Approximate heap bytes held by the arrays, excluding the object header of this instance. */
+    public long footprintBytes() {
+        return 16L + 8L * ids.length + 16L + arena.length + 16L + 4L * offsets.length + 16L + flags.length;
+    }
+
+    private String field(int i, int f) {
+        if ((flags[i] & (FLAG_NULL << f)) != 0) return null;
+        int from = offsets[i * FIELDS + f];
+        return new String(arena, from, offsets[i * FIELDS + f + 1] - from, StandardCharsets.UTF_8);
+    }
+
+    /** Appends users in order; the arrays grow geometrically and are trimmed by {@link #build()}. */
+    public static final class Builder {
+        private long[] ids;
+        private byte[] arena;
+        private int[] offsets;
+        private byte[] flags;
+        private int size;
+        private int arenaSize;
+
+        public Builder(int expectedUsers) {
+            int n = Math.max(1, expectedUsers);
+            ids = new long[n];
+            flags = new byte[n];
+            offsets = new int[n * FIELDS + 1];
+            arena = new byte[n * 24];
+        }
+
+        public int size() { return size; }
+
+        public Builder add(GitLabUser u) {
+            return add(u.getId(), u.getUsername(), u.getName(), u.getAvatarUrl(), u.getState(), u.isBot());
+        }
+
+        public Builder add(long id, String username, String name, String avatarUrl, String state, boolean bot) {
+            ensureUserCapacity();
+            int flag = bot ? FLAG_BOT : 0;
+            int base = size * FIELDS;
+            flag |= put(base + USERNAME, USERNAME, username);
+            flag |= put(base + NAME, NAME, name);
+            flag |= put(base + AVATAR_URL, AVATAR_URL, avatarUrl);
+            flag |= put(base + STATE, STATE, state);
+            offsets[base + FIELDS] = arenaSize;
+            ids[size] = id;
+            flags[size] = (byte) flag;
+            size++;
+            return this;
+        }
+
+        /** Copies user {@code i} of {@code source} without decoding its text. */
+        public Builder add(GitLabRoster source, int i) {
+            ensureUserCapacity();
+            int from = source.offsets[i * FIELDS];
+            int to = source.offsets[i * FIELDS + FIELDS];
+            ensureArenaCapacity(to - from);
+            System.arraycopy(source.arena, from, arena, arenaSize, to - from);
+            int base = size * FIELDS;
+            for (int f = 0; f <= FIELDS; f++) offsets[base + f] = arenaSize + source.offsets[i * FIELDS + f] - from;
+            arenaSize += to - from;
+            ids[size] = source.ids[i];
+            flags[size] = source.flags[i];
+            size++;
+            return this;
+        }
+
+        public GitLabRoster build() {
+            return new GitLabRoster(
+                    Arrays.copyOf(ids, size),
+                    Arrays.copyOf(arena, arenaSize),
+                    Arrays.copyOf(offsets, size * FIELDS + 1),
+                    Arrays.copyOf(flags, size));
+        }
+
+        /** Writes one field at the arena tail and returns its null flag. */
+        private int put(int slot, int field, String value) {
+            offsets[slot] = arenaSize;
+            if (value == null) return FLAG_NULL << field;
+            int len = value.length();
+            ensureArenaCapacity(len);
+            int i = 0;
+            // ASCII fast path writes bytes directly; anything else goes through the UTF-8 encoder once
+            while (i < len && value.charAt(i) < 0x80) arena[arenaSize++] = (byte) value.charAt(i++);
+            if (i < len) {
+                byte[] rest = value.substring(i).getBytes(StandardCharsets.UTF_8);
+                ensureArenaCapacity(rest.length);
+                System.arraycopy(rest, 0, arena, arenaSize, rest.length);
+                arenaSize += rest.length;
+            }
+            return 0;
+        }
+
+        private void ensureUserCapacity() {
+            if (size < ids.length) return;
+            int n = ids.length * 2;
+            ids = Arrays.copyOf(ids, n);
+            flags = Arrays.copyOf(flags, n);
+            offsets = Arrays.copyOf(offsets, n * FIELDS + 1);
+        }
+
+        private void ensureArenaCapacity(int extra) {
+            if (arenaSize + extra <= arena.length) return;
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + extra));
+        }
+    }
+}
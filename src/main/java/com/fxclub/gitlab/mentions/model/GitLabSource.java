@@ -0,0 +1,60 @@
+package com.fxclub.gitlab.mentions.model;
+
+import java.util.Locale;
+
+/**
+ * One place mentionable users come from: a group's members, a project's members, or the instance's active users.
+ * <p>
+ * Written in settings as {@code group:<id>}, {@code project:<id>} or {@code users}, optionally followed by
+ * {@code @<ttlSeconds>} to override the cache TTL for that source, e.g. {@code project:42@3600}.
+ *
+ * @param ttlSeconds per-source TTL, or 0 to use the global cache TTL
+ */
+public record GitLabSource(Kind kind, String id, int ttlSeconds) {
+    public enum Kind { GROUP, PROJECT, USERS }
+
+    public static GitLabSource group(String id) { return new GitLabSource(Kind.GROUP, id.trim(), 0); }
+
+    public static GitLabSource project(String id) { return new GitLabSource(Kind.PROJECT, id.trim(), 0); }
+
+    public static GitLabSource users() { return new GitLabSource(Kind.USERS, null, 0); }
+
+    /** Parses a settings entry; returns null if it is blank or malformed. */
+    public static GitLabSource parse(String spec) {
+        if (spec == null || spec.isBlank()) return null;
+        String s = spec.trim();
+        int ttl = 0;
+        int at = s.lastIndexOf('@');
+        if (at > 0) {
+            try {
+                ttl = Math.max(0, Integer.parseInt(s.substring(at + 1).trim()));
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+            s = s.substring(0, at).trim();
+        }
+        int colon = s.indexOf(':');
+        String kind = (colon < 0 ? s : s.substring(0, colon)).trim().toLowerCase(Locale.ROOT);
+        String id = colon < 0 ? "" : s.substring(colon + 1).trim();
+        switch (kind) {
+            case "users":
+                return new GitLabSource(Kind.USERS, null, ttl);
+            case "group":
+                return id.isEmpty() ? null : new GitLabSource(Kind.GROUP, id, ttl);
+            case "project":
+                return id.isEmpty() ? null : new GitLabSource(Kind.PROJECT, id, ttl);
+            default:
+                return null;
+        }
+    }
+
+    /** Stable identity of the source, independent of its TTL; used for cache segments and snapshot files. */
+    public String key() {
+        return kind == Kind.USERS ? "users" : kind.name().toLowerCase(Locale.ROOT) + ":" + id;
+    }
+
+    @Override
+    public String toString() {
+        return ttlSeconds > 0 ? key() + "@" + ttlSeconds : key();
+    }
+}
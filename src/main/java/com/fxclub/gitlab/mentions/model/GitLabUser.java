@@ -9,7 +9,7 @@ import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 
 /**
- * Represents a GitLab user with a stable identity (id) and username.
+ * Represents a GitLab user with a stable identity (id) and username, plus the profile fields shown in completion.
  */
 @Data
 @Builder(toBuilder = true)
@@ -26,6 +26,20 @@ public class GitLabUser {
 
     private String name;
 
+    /** Absolute avatar URL as reported by GitLab; may be null. */
+    private String avatarUrl;
+
+    /** Account state such as {@code active}, {@code blocked} or {@code deactivated}; null if not reported. */
+    private String state;
+
+    /** True for bot accounts (project/group access tokens, service users). */
+    private boolean bot;
+
+    /** Whether the account can be mentioned meaningfully; unknown state counts as active. */
+    public boolean isActive() {
+        return state == null || "active".equals(state);
+    }
+
     @Override
     public String toString() {
         return username + (name != null && !name.isBlank() ? " (" + name + ")" : "");
@@ -0,0 +1,85 @@
+package com.fxclub.gitlab.mentions.service;
+
+import java.awt.image.BufferedImage;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memory tier of the avatar pipeline: an LRU of decoded images bounded by their pixel bytes rather than their count.
+ * Values are soft references, so the GC may drop images under memory pressure before the byte budget is reached;
+ * cleared entries are purged through a reference queue and stop counting against the budget.
+ */
+final class AvatarIconCache {
+    private static final class Ref extends SoftReference<BufferedImage> {
+        final String key;
+        final int bytes;
+
+        Ref(String key, BufferedImage image, ReferenceQueue<BufferedImage> queue) {
+            super(image, queue);
+            this.key = key;
+            this.bytes = image.getWidth() * image.getHeight() * 4;
+        }
+    }
+
+    private final long maxBytes;
+    private final ReferenceQueue<BufferedImage> cleared = new ReferenceQueue<>();
+    private final LinkedHashMap<String, Ref> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes = 0L;
+
+    AvatarIconCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized BufferedImage get(String key) {
+        purgeCleared();
+        Ref ref = entries.get(key);
+        return ref == null ? null : ref.get();
+    }
+
+    synchronized void put(String key, BufferedImage image) {
+        purgeCleared();
+        Ref ref = new Ref(key, image, cleared);
+        Ref old = entries.put(key, ref);
+        if (old != null) totalBytes -= old.bytes;
+        totalBytes += ref.bytes;
+        var it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Ref> eldest = it.next();
+            if (eldest.getValue() == ref) break; // always keep the newest image
+            totalBytes -= eldest.getValue().bytes;
+            it.remove();
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        totalBytes = 0L;
+        while (cleared.poll() != null) {
+            // drain
+        }
+    }
+
+    synchronized int size() {
+        purgeCleared();
+        return entries.size();
+    }
+
+    synchronized long weightBytes() {
+        purgeCleared();
+        return totalBytes;
+    }
+
+    private void purgeCleared() {
+        Object polled;
+        while ((polled = cleared.poll()) != null) {
+            Ref ref = (Ref) polled;
+            // Only forget the mapping if it still points at the cleared reference, not a newer image
+            if (entries.get(ref.key) == ref) {
+                entries.remove(ref.key);
+                totalBytes -= ref.bytes;
+            }
+        }
+    }
+}
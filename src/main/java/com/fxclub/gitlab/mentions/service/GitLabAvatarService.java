@@ -0,0 +1,405 @@
+package com.fxclub.gitlab.mentions.service;
+
+import com.fxclub.gitlab.mentions.model.GitLabUser;
+import com.fxclub.gitlab.mentions.settings.GitLabSettingsState;
+import com.intellij.icons.AllIcons;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.util.io.NioFiles;
+import com.intellij.ui.scale.JBUIScale;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Avatar icons for completion items.
+ * <p>
+ * {@link #iconFor} never does I/O: it returns an icon that paints the decoded avatar if it is in memory and a
+ * placeholder otherwise. Painting a placeholder queues the URL; a single background worker serves the queue in
+ * small batches at a bounded request rate, first from the on-disk tier and then from the network, and repaints the
+ * waiting components when an image arrives. Decoded images are downscaled once and kept in a byte-bounded LRU of
+ * soft references, so memory stays capped no matter how many users the roster has. The disk tier is pruned when the
+ * service starts and after every {@link #PRUNE_EVERY_WRITES} writes: expired files go first, then the oldest ones
+ * until it fits {@link #DISK_BUDGET_BYTES}.
+ */
+@Service(Service.Level.APP)
+@Slf4j
+public final class GitLabAvatarService implements Disposable {
+    private static final int ICON_SIZE = 16;
+    /** Images are stored at twice the icon size so they stay crisp on HiDPI screens. */
+    private static final int IMAGE_PX = ICON_SIZE * 2;
+    private static final long MEMORY_BUDGET_BYTES = 8L << 20; // ~2k avatars at 32x32 ARGB
+    private static final int MAX_PENDING = 256;
+    private static final int MAX_FAILED = 4096;
+    private static final int BATCH_SIZE = 8;
+    private static final int MAX_REQUESTS_PER_SECOND = 16;
+    private static final long DISK_MAX_AGE_MS = TimeUnit.DAYS.toMillis(7);
+    private static final long DISK_BUDGET_BYTES = 16L << 20; // ~8k avatars of 1-3 KB each
+    private static final int PRUNE_EVERY_WRITES = 256;
+    /** A failed avatar is tried again after this long, unless the server said it does not exist. */
+    private static final long FAILED_RETRY_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final Icon PLACEHOLDER = AllIcons.General.User;
+
+    private final AvatarIconCache memory = new AvatarIconCache(MEMORY_BUDGET_BYTES);
+    private final Path diskDir = Path.of(PathManager.getSystemPath(), "gitlab-mentions", "avatars");
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(3))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+    private final ExecutorService worker = AppExecutorUtil.createBoundedApplicationPoolExecutor("GitLab Avatars", 1);
+
+    /** URLs waiting for the worker, oldest first, with the components to repaint once they are loaded. */
+    private final LinkedHashMap<String, Set<Component>> pending = new LinkedHashMap<>();
+    /** URLs taken by the worker and not finished yet; later requests only add their component here. */
+    private final Map<String, Set<Component>> loading = new HashMap<>();
+    /**
+     * URLs that could not be loaded, with the time they may be requested again; {@link Long#MAX_VALUE} for avatars
+     * that are gone (404/410), which are not retried until the cache is cleared.
+     */
+    private final LinkedHashMap<String, Long> failed = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_FAILED;
+        }
+    };
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicInteger writesSincePrune = new AtomicInteger();
+    private volatile boolean disposed = false;
+
+    public GitLabAvatarService() {
+        worker.execute(this::pruneDisk);
+    }
+
+    public static GitLabAvatarService getInstance() {
+        return ApplicationManager.getApplication().getService(GitLabAvatarService.class);
+    }
+
+    /** Icon for the user's avatar, or the placeholder if the user has none. Never blocks. */
+    public Icon iconFor(GitLabUser user) {
+        String url = user.getAvatarUrl();
+        if (url == null || url.isBlank()) return PLACEHOLDER;
+        return new AvatarIcon(url.trim());
+    }
+
+    /** Drops decoded images and the failure list, and deletes the on-disk tier in the background. */
+    public void clear() {
+        memory.clear();
+        synchronized (pending) {
+            failed.clear();
+        }
+        worker.execute(() -> {
+            try {
+                NioFiles.deleteRecursively(diskDir);
+            } catch (IOException ex) {
+                log.warn("Failed to delete cached avatars in {}", diskDir, ex);
+            }
+        });
+    }
+
+    public int cachedIconCount() { return memory.size(); }
+
+    public long cachedIconBytes() { return memory.weightBytes(); }
+
+    /** Paints the avatar once loaded, the placeholder until then; a placeholder paint requests the image. */
+    private final class AvatarIcon implements Icon {
+        private final String url;
+
+        AvatarIcon(String url) {
+            this.url = url;
+        }
+
+        @Override
+        public void paintIcon(Component c, Graphics g, int x, int y) {
+            BufferedImage image = memory.get(url);
+            if (image != null) {
+                Graphics2D g2 = (Graphics2D) g.create();
+                try {
+                    g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                    g2.drawImage(image, x, y, getIconWidth(), getIconHeight(), null);
+                } finally {
+                    g2.dispose();
+                }
+                return;
+            }
+            PLACEHOLDER.paintIcon(c, g, x, y);
+            request(url, c);
+        }
+
+        @Override
+        public int getIconWidth() { return JBUIScale.scale(ICON_SIZE); }
+
+        @Override
+        public int getIconHeight() { return JBUIScale.scale(ICON_SIZE); }
+    }
+
+    private void request(String url, Component waiter) {
+        if (disposed) return;
+        synchronized (pending) {
+            Long retryAtMs = failed.get(url);
+            if (retryAtMs != null) {
+                if (System.currentTimeMillis() < retryAtMs) return;
+                failed.remove(url);
+            }
+            Set<Component> inFlight = loading.get(url);
+            if (inFlight != null) {
+                if (waiter != null) inFlight.add(waiter);
+                return;
+            }
+            Set<Component> waiters = pending.computeIfAbsent(url, k -> Collections.newSetFromMap(new WeakHashMap<>()));
+            if (waiter != null) waiters.add(waiter);
+            // Rows scrolled out of view long ago are the least useful; drop them first
+            Iterator<String> eldest = pending.keySet().iterator();
+            while (pending.size() > MAX_PENDING) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        if (draining.compareAndSet(false, true)) worker.execute(this::drain);
+    }
+
+    /** Serves the queue batch by batch, pacing network requests to {@link #MAX_REQUESTS_PER_SECOND}. */
+    private void drain() {
+        try {
+            while (!disposed) {
+                List<String> batch = takeBatch();
+                if (batch.isEmpty()) return;
+                long startedNanos = System.nanoTime();
+                List<CompletableFuture<Void>> downloads = new ArrayList<>();
+                for (String url : batch) {
+                    BufferedImage fromDisk = readDisk(url);
+                    if (fromDisk != null) {
+                        loaded(url, fromDisk);
+                    } else {
+                        downloads.add(download(url));
+                    }
+                }
+                if (downloads.isEmpty()) continue;
+                try {
+                    CompletableFuture.allOf(downloads.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+                } catch (Exception ex) {
+                    log.debug("Avatar batch did not complete cleanly", ex);
+                }
+                long budgetNanos = TimeUnit.SECONDS.toNanos(downloads.size()) / MAX_REQUESTS_PER_SECOND;
+                long sleepNanos = budgetNanos - (System.nanoTime() - startedNanos);
+                if (sleepNanos > 0) TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            draining.set(false);
+            boolean more;
+            synchronized (pending) {
+                more = !pending.isEmpty();
+            }
+            if (more && !disposed && draining.compareAndSet(false, true)) worker.execute(this::drain);
+        }
+    }
+
+    /** Moves up to {@link #BATCH_SIZE} URLs from the queue to {@link #loading}. */
+    private List<String> takeBatch() {
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+        synchronized (pending) {
+            Iterator<Map.Entry<String, Set<Component>>> it = pending.entrySet().iterator();
+            while (batch.size() < BATCH_SIZE && it.hasNext()) {
+                Map.Entry<String, Set<Component>> next = it.next();
+                loading.put(next.getKey(), next.getValue());
+                batch.add(next.getKey());
+                it.remove();
+            }
+        }
+        return batch;
+    }
+
+    private CompletableFuture<Void> download(String url) {
+        HttpRequest.Builder request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(10)).GET();
+        } catch (IllegalArgumentException ex) {
+            markFailed(url, true);
+            return CompletableFuture.completedFuture(null);
+        }
+        // Uploaded avatars of private instances may need the token; never send it to other hosts
+        GitLabSettingsState settings = GitLabSettingsState.getInstance();
+        if (isConfiguredHost(url, settings.hostUrl) && settings.privateToken != null && !settings.privateToken.isBlank()) {
+            request.header("PRIVATE-TOKEN", settings.privateToken.trim());
+        }
+        return httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray())
+                .handle((resp, error) -> {
+                    BufferedImage image = null;
+                    if (error == null && resp.statusCode() == 200) image = decode(resp.body());
+                    if (image == null) {
+                        // Timeouts, 5xx, rate limits and auth hiccups pass; only a missing avatar stays missing
+                        markFailed(url, error == null && (resp.statusCode() == 404 || resp.statusCode() == 410));
+                        return null;
+                    }
+                    writeDisk(url, image);
+                    loaded(url, image);
+                    return null;
+                });
+    }
+
+    private void loaded(String url, BufferedImage image) {
+        memory.put(url, image);
+        List<Component> waiters;
+        synchronized (pending) {
+            Set<Component> registered = loading.remove(url);
+            waiters = registered == null ? List.of() : new ArrayList<>(registered);
+        }
+        for (Component c : waiters) c.repaint(); // thread-safe: posts a paint event
+    }
+
+    private void markFailed(String url, boolean permanent) {
+        long retryAtMs = permanent ? Long.MAX_VALUE : System.currentTimeMillis() + FAILED_RETRY_MS;
+        synchronized (pending) {
+            loading.remove(url);
+            failed.put(url, retryAtMs);
+        }
+    }
+
+    /** Decodes and downscales an avatar to {@link #IMAGE_PX} square; null if the bytes are not an image. */
+    private static BufferedImage decode(byte[] bytes) {
+        try {
+            BufferedImage source = ImageIO.read(new ByteArrayInputStream(bytes));
+            if (source == null) return null;
+            BufferedImage scaled = new BufferedImage(IMAGE_PX, IMAGE_PX, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = scaled.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(source, 0, 0, IMAGE_PX, IMAGE_PX, null);
+            } finally {
+                g.dispose();
+            }
+            return scaled;
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /** Disk tier: the downscaled PNG, reused for a week before it is fetched again. */
+    private BufferedImage readDisk(String url) {
+        Path file = diskFile(url);
+        try {
+            if (!Files.isRegularFile(file)) return null;
+            if (System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis() > DISK_MAX_AGE_MS) return null;
+            return ImageIO.read(file.toFile());
+        } catch (IOException | RuntimeException ex) {
+            log.debug("Failed to read cached avatar {}", file, ex);
+            return null;
+        }
+    }
+
+    private void writeDisk(String url, BufferedImage image) {
+        Path file = diskFile(url);
+        try {
+            Files.createDirectories(diskDir);
+            Path tmp = Files.createTempFile(diskDir, file.getFileName().toString(), ".tmp");
+            try {
+                ImageIO.write(image, "png", tmp.toFile());
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException ex) {
+            log.debug("Failed to write cached avatar {}", file, ex);
+        }
+        if (writesSincePrune.incrementAndGet() >= PRUNE_EVERY_WRITES && !disposed) {
+            writesSincePrune.set(0);
+            worker.execute(this::pruneDisk);
+        }
+    }
+
+    /**
+     * Deletes avatars past {@link #DISK_MAX_AGE_MS}, which {@link #readDisk} ignores anyway, then the least recently
+     * written ones until the directory fits {@link #DISK_BUDGET_BYTES}. Leftover temp files count as expired.
+     */
+    private void pruneDisk() {
+        if (!Files.isDirectory(diskDir)) return;
+        record Cached(Path file, long modifiedMs, long bytes) {}
+        List<Cached> kept = new ArrayList<>();
+        long totalBytes = 0;
+        long expiredBefore = System.currentTimeMillis() - DISK_MAX_AGE_MS;
+        int deleted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(diskDir)) {
+            for (Path file : files) {
+                BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                if (!attrs.isRegularFile()) continue;
+                long modifiedMs = attrs.lastModifiedTime().toMillis();
+                if (modifiedMs < expiredBefore || file.getFileName().toString().endsWith(".tmp")) {
+                    if (Files.deleteIfExists(file)) deleted++;
+                    continue;
+                }
+                kept.add(new Cached(file, modifiedMs, attrs.size()));
+                totalBytes += attrs.size();
+            }
+            if (totalBytes > DISK_BUDGET_BYTES) {
+                kept.sort(Comparator.comparingLong(Cached::modifiedMs));
+                for (Cached c : kept) {
+                    if (totalBytes <= DISK_BUDGET_BYTES) break;
+                    if (Files.deleteIfExists(c.file())) deleted++;
+                    totalBytes -= c.bytes();
+                }
+            }
+        } catch (IOException ex) {
+            log.debug("Failed to prune cached avatars in {}", diskDir, ex);
+        }
+        if (deleted > 0) log.info("Pruned {} cached avatars; {} KB left", deleted, totalBytes / 1024);
+    }
+
+    private Path diskFile(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            return diskDir.resolve(HexFormat.of().formatHex(digest, 0, 12) + ".png");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isConfiguredHost(String url, String hostUrl) {
+        if (hostUrl == null || hostUrl.isBlank()) return false;
+        try {
+            String host = URI.create(hostUrl.trim()).getHost();
+            return host != null && host.equalsIgnoreCase(URI.create(url).getHost());
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    @Override
+    public void dispose() {
+        disposed = true;
+        synchronized (pending) {
+            pending.clear();
+            loading.clear();
+        }
+        worker.shutdownNow();
+    }
+}
@@ -0,0 +1,413 @@
+package com.fxclub.gitlab.mentions.service;
+
+import com.fxclub.gitlab.mentions.model.GitLabRoster;
+import com.fxclub.gitlab.mentions.model.GitLabUser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongToIntFunction;
+
+/**
+ * Immutable search index over one roster snapshot.
+ * <p>
+ * Usernames and names are lower-cased once into a single shared char arena with a word-start bitmask each; the
+ * roster itself stays columnar and users are only materialized for the returned top results. Two posting
+ * structures narrow the candidates of a query: every distinct trigram maps to the sorted positions of users
+ * containing it (substring hits), and every character maps to the users having a word that starts with it (prefix
+ * and subsequence hits, which must be anchored at a word start). Candidates are ranked with {@link MentionMatcher}
+ * and the best {@code limit} are kept in a bounded heap, so the roster is never sorted.
+ */
+public final class GitLabUserIndex {
+    public static final GitLabUserIndex EMPTY = new GitLabUserIndex(GitLabRoster.EMPTY);
+
+    private static final int[] NO_POSTINGS = new int[0];
+    /** Marks a packed trigram key as occupied so that 0 can denote an empty slot. */
+    private static final long KEY_PRESENT = 1L << 48;
+    /** Word-start buckets for ASCII first characters; everything else shares the last bucket. */
+    private static final int OTHER_BUCKET = 128;
+
+    private final GitLabRoster roster;
+    /** Lower-cased usernames and names back to back; user i's username is slice 2i and its name slice 2i+1. */
+    private final char[] text;
+    private final int[] textOffsets;
+    private final long[] usernameStarts;
+    private final long[] nameStarts;
+    /** Per user: one bit per character class present in username or name; a query's bits must all be present. */
+    private final long[] charMasks;
+    private final int[][] wordStartBuckets;
+
+    // Open-addressing hash table: trigram key -> sorted user positions
+    private final long[] keys;
+    private final int[][] postings;
+    private final int mask;
+
+    /** Username hash -> position for exact lookups; built on first use since completion never needs it. */
+    private volatile LongIntHashMap usernamePositions;
+    /** User id -> position, for scoring users that completion holds as objects; built on first use. */
+    private volatile LongIntHashMap idPositions;
+
+    public GitLabUserIndex(GitLabRoster roster) {
+        this.roster = roster;
+        int n = roster.size();
+        this.textOffsets = new int[2 * n + 1];
+        this.usernameStarts = new long[n];
+        this.nameStarts = new long[n];
+        this.charMasks = new long[n];
+
+        char[] chars = new char[Math.max(16, n * 16)];
+        int length = 0;
+        Map<Long, IntList> grams = new HashMap<>();
+        IntList[] buckets = new IntList[OTHER_BUCKET + 1];
+        for (int i = 0; i < n; i++) {
+            for (int f = 0; f < 2; f++) {
+                String value = f == 0 ? roster.username(i) : roster.name(i);
+                int from = length;
+                textOffsets[2 * i + f] = from;
+                if (value != null) {
+                    if (length + value.length() > chars.length) {
+                        chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + value.length()));
+                    }
+                    for (int k = 0; k < value.length(); k++) chars[length++] = MentionMatcher.lower(value.charAt(k));
+                }
+                long starts = MentionMatcher.wordStarts(value);
+                if (f == 0) usernameStarts[i] = starts; else nameStarts[i] = starts;
+                charMasks[i] |= charMask(chars, from, length);
+                addTrigrams(grams, chars, from, length, i);
+                addWordStarts(buckets, chars, from, length, starts, i);
+            }
+        }
+        textOffsets[2 * n] = length;
+        this.text = Arrays.copyOf(chars, length);
+
+        this.wordStartBuckets = new int[buckets.length][];
+        for (int b = 0; b < buckets.length; b++) {
+            wordStartBuckets[b] = buckets[b] == null ? NO_POSTINGS : buckets[b].toArray();
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(4, grams.size() * 2 - 1)) << 1;
+        this.keys = new long[capacity];
+        this.postings = new int[capacity][];
+        this.mask = capacity - 1;
+        for (Map.Entry<Long, IntList> e : grams.entrySet()) {
+            long key = e.getKey();
+            int slot = slot(key);
+            while (keys[slot] != 0L) slot = (slot + 1) & mask;
+            keys[slot] = key;
+            postings[slot] = e.getValue().toArray();
+        }
+    }
+
+    public GitLabRoster roster() { return roster; }
+
+    public int size() { return roster.size(); }
+
+    public boolean isEmpty() { return roster.isEmpty(); }
+
+    /** Position of the user whose username equals {@code username} ignoring case, or -1. */
+    public int indexOfUsername(String username) {
+        LongIntHashMap positions = usernamePositions;
+        if (positions == null) {
+            // Built completely before it is published; concurrent first callers may each build one
+            positions = new LongIntHashMap(roster.size(), -1);
+            for (int i = roster.size() - 1; i >= 0; i--) {
+                positions.put(usernameHash(text, textOffsets[2 * i], textOffsets[2 * i + 1]), i);
+            }
+            usernamePositions = positions;
+        }
+        char[] query = new char[username.length()];
+        for (int k = 0; k < query.length; k++) query[k] = MentionMatcher.lower(username.charAt(k));
+        int i = positions.get(usernameHash(query, 0, query.length));
+        if (i < 0) return -1;
+        if (usernameEquals(i, query)) return i;
+        // A 64-bit hash collision; settle it the slow way
+        for (int j = 0; j < roster.size(); j++) {
+            if (usernameEquals(j, query)) return j;
+        }
+        return -1;
+    }
+
+    /** Position of the user with this id, or -1. */
+    public int indexOfId(long id) {
+        LongIntHashMap positions = idPositions;
+        if (positions == null) {
+            // Built completely before it is published; concurrent first callers may each build one
+            positions = new LongIntHashMap(roster.size(), -1);
+            for (int i = roster.size() - 1; i >= 0; i--) positions.put(roster.id(i), i);
+            idPositions = positions;
+        }
+        return positions.get(id);
+    }
+
+    private boolean usernameEquals(int i, char[] lowered) {
+        int from = textOffsets[2 * i];
+        return textOffsets[2 * i + 1] - from == lowered.length
+                && Arrays.equals(text, from, from + lowered.length, lowered, 0, lowered.length);
+    }
+
+    /** FNV-1a over the lower-cased characters. */
+    private static long usernameHash(char[] chars, int from, int to) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = from; i < to; i++) {
+            h ^= chars[i];
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * Returns up to {@code limit} users matching {@code query}, best match first; equally scored users keep
+     * roster order.
+     * <p>
+     * Candidates are scored in two phases. The first covers the users that can reach the best tiers; the second,
+     * broader one only runs while the heap can still accept its weaker tier.
+     */
+    public List<GitLabUser> search(String query, int limit) {
+        return search(query, limit, null);
+    }
+
+    /**
+     * Like {@link #search(String, int)}, adding {@code boost} (user id to ranking points, at most
+     * {@link MentionFrecencyStore#MAX_BOOST}) to every match score; null for no boost.
+     */
+    public List<GitLabUser> search(String query, int limit, LongToIntFunction boost) {
+        TopK top = collect(query, limit, boost);
+        return top == null ? Collections.emptyList() : top.drain(roster);
+    }
+
+    /**
+     * Like {@link #search(String, int, LongToIntFunction)} but returns the roster positions of the matches, best
+     * first, without materializing any user.
+     */
+    public int[] searchPositions(String query, int limit, LongToIntFunction boost) {
+        TopK top = collect(query, limit, boost);
+        return top == null ? NO_POSTINGS : top.drainPositions();
+    }
+
+    /** The best {@code limit} matches in a heap, or null if there can be none. */
+    private TopK collect(String query, int limit, LongToIntFunction boost) {
+        if (roster.isEmpty() || limit <= 0) return null;
+        int slack = boost == null ? 1 : MentionFrecencyStore.MAX_BOOST + 1;
+        TopK top = new TopK(Math.min(limit, roster.size()));
+        if (query.isEmpty()) {
+            for (int i = 0; i < top.capacity(); i++) top.offer(0, i);
+            return top;
+        }
+        int[] anchored = wordStartBuckets[bucket(MentionMatcher.lower(query.charAt(0)))];
+        if (query.length() < 3) {
+            // Prefix, word-prefix and subsequence hits all start a word with the first query character
+            offerAll(top, anchored, null, query, boost);
+            // Mid-word substrings rank below them and are only worth a full scan if the heap is not saturated
+            if (!top.saturatedAbove(MentionMatcher.MAX_SUBSTRING_SCORE + slack)) offerAll(top, null, anchored, query, boost);
+        } else {
+            int[] substring = rarestTrigramPostings(query);
+            offerAll(top, substring, null, query, boost);
+            if (!top.saturatedAbove(MentionMatcher.MAX_FUZZY_SCORE + slack)) offerAll(top, anchored, substring, query, boost);
+        }
+        return top;
+    }
+
+    /**
+     * Offers every position of {@code candidates} (all positions if null) that is not contained in the sorted
+     * {@code exclude} list (nothing excluded if null).
+     */
+    private void offerAll(TopK top, int[] candidates, int[] exclude, String query, LongToIntFunction boost) {
+        long required = 0L;
+        for (int i = 0; i < query.length(); i++) required |= charBit(MentionMatcher.lower(query.charAt(i)));
+        int n = candidates == null ? roster.size() : candidates.length;
+        int e = 0;
+        for (int i = 0; i < n; i++) {
+            int idx = candidates == null ? i : candidates[i];
+            if ((charMasks[idx] & required) != required) continue;
+            if (exclude != null) {
+                while (e < exclude.length && exclude[e] < idx) e++;
+                if (e < exclude.length && exclude[e] == idx) continue;
+            }
+            offer(top, idx, query, boost);
+        }
+    }
+
+    /** Relevance of user {@code idx} for {@code query}: the better of username and name, username winning ties. */
+    public int score(int idx, String query) {
+        int su = MentionMatcher.score(text, textOffsets[2 * idx], textOffsets[2 * idx + 1], usernameStarts[idx], query);
+        int sn = MentionMatcher.score(text, textOffsets[2 * idx + 1], textOffsets[2 * idx + 2], nameStarts[idx], query);
+        return su == MentionMatcher.NO_MATCH ? sn : Math.max(su + 1, sn);
+    }
+
+    private void offer(TopK top, int idx, String query, LongToIntFunction boost) {
+        int s = score(idx, query);
+        if (s == MentionMatcher.NO_MATCH) return;
+        top.offer(boost == null ? s : s + boost.applyAsInt(roster.id(idx)), idx);
+    }
+
+    /** Postings of the least frequent trigram of the query; empty if any trigram is absent. */
+    private int[] rarestTrigramPostings(String query) {
+        int[] best = null;
+        for (int i = 0; i + 3 <= query.length(); i++) {
+            int[] p = lookup(pack(MentionMatcher.lower(query.charAt(i)), MentionMatcher.lower(query.charAt(i + 1)),
+                    MentionMatcher.lower(query.charAt(i + 2))));
+            if (p.length == 0) return NO_POSTINGS;
+            if (best == null || p.length < best.length) best = p;
+        }
+        return best == null ? NO_POSTINGS : best;
+    }
+
+    private int[] lookup(long key) {
+        int slot = slot(key);
+        while (true) {
+            long k = keys[slot];
+            if (k == 0L) return NO_POSTINGS;
+            if (k == key) return postings[slot];
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private static long charBit(char c) {
+        return 1L << (c & 63);
+    }
+
+    private static long charMask(char[] chars, int from, int to) {
+        long mask = 0L;
+        for (int i = from; i < to; i++) mask |= charBit(chars[i]);
+        return mask;
+    }
+
+    private static int bucket(char c) {
+        return c < OTHER_BUCKET ? c : OTHER_BUCKET;
+    }
+
+    private static long pack(char a, char b, char c) {
+        return KEY_PRESENT | ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    private static void addTrigrams(Map<Long, IntList> grams, char[] chars, int from, int to, int idx) {
+        for (int i = from; i + 3 <= to; i++) {
+            grams.computeIfAbsent(pack(chars[i], chars[i + 1], chars[i + 2]), k -> new IntList()).addUnique(idx);
+        }
+    }
+
+    /**
+     * Adds {@code idx} to the bucket of each word-start character, and always to that of the first character, so
+     * that prefix queries such as {@code _b} for {@code _bot} or {@code .s} for {@code .svc} find their candidates.
+     */
+    private static void addWordStarts(IntList[] buckets, char[] chars, int from, int to, long starts, int idx) {
+        for (int i = from; i < to; i++) {
+            int at = i - from;
+            boolean start = at == 0 || (at < 64
+                    ? (starts & (1L << at)) != 0
+                    : Character.isLetterOrDigit(chars[i]) && !Character.isLetterOrDigit(chars[i - 1]));
+            if (!start) continue;
+            int b = bucket(chars[i]);
+            if (buckets[b] == null) buckets[b] = new IntList();
+            buckets[b].addUnique(idx);
+        }
+    }
+
+    /**
+     * Bounded min-heap of (score, position) keeping the best {@code k} offers; the root is the weakest entry
+     * (lowest score, then latest roster position).
+     */
+    private static final class TopK {
+        private final int[] scores;
+        private final int[] positions;
+        private int size;
+
+        TopK(int k) {
+            scores = new int[k];
+            positions = new int[k];
+        }
+
+        int capacity() { return scores.length; }
+
+        /** True once the heap is full and even its weakest entry scores above {@code bound}. */
+        boolean saturatedAbove(int bound) {
+            return size == scores.length && (size == 0 || scores[0] > bound);
+        }
+
+        void offer(int score, int position) {
+            if (scores.length == 0) return;
+            if (size < scores.length) {
+                scores[size] = score;
+                positions[size] = position;
+                siftUp(size++);
+            } else if (weaker(scores[0], positions[0], score, position)) {
+                scores[0] = score;
+                positions[0] = position;
+                siftDown(0);
+            }
+        }
+
+        /** Empties the heap into a list ordered best first, materializing only these users. */
+        List<GitLabUser> drain(GitLabRoster roster) {
+            int[] best = drainPositions();
+            GitLabUser[] out = new GitLabUser[best.length];
+            for (int i = 0; i < best.length; i++) out[i] = roster.user(best[i]);
+            return new ArrayList<>(Arrays.asList(out));
+        }
+
+        /** Empties the heap into roster positions ordered best first. */
+        int[] drainPositions() {
+            int[] out = new int[size];
+            for (int i = size - 1; i >= 0; i--) {
+                out[i] = positions[0];
+                size--;
+                scores[0] = scores[size];
+                positions[0] = positions[size];
+                siftDown(0);
+            }
+            return out;
+        }
+
+        /** True if (s1, p1) ranks below (s2, p2). */
+        private static boolean weaker(int s1, int p1, int s2, int p2) {
+            return s1 < s2 || (s1 == s2 && p1 > p2);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!weaker(scores[i], positions[i], scores[parent], positions[parent])) break;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int l = 2 * i + 1, r = l + 1, m = i;
+                if (l < size && weaker(scores[l], positions[l], scores[m], positions[m])) m = l;
+                if (r < size && weaker(scores[r], positions[r], scores[m], positions[m])) m = r;
+                if (m == i) return;
+                swap(i, m);
+                i = m;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int s = scores[a]; scores[a] = scores[b]; scores[b] = s;
+            int p = positions[a]; positions[a] = positions[b]; positions[b] = p;
+        }
+    }
+
+    /** Growable int list used only while building; positions are appended in ascending order. */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void addUnique(int v) {
+            if (size > 0 && values[size - 1] == v) return;
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+
+        int[] toArray() { return Arrays.copyOf(values, size); }
+    }
+}
@@ -1,74 +1,911 @@
 package com.fxclub.gitlab.mentions.service;
 
 import com.fxclub.gitlab.mentions.api.GitLabApiClient;
+import com.fxclub.gitlab.mentions.api.GitLabHttpCache;
+import com.fxclub.gitlab.mentions.metrics.GitLabMetrics;
+import com.fxclub.gitlab.mentions.model.GitLabGroup;
+import com.fxclub.gitlab.mentions.model.GitLabSource;
+import com.fxclub.gitlab.mentions.model.GitLabRoster;
 import com.fxclub.gitlab.mentions.model.GitLabUser;
 import com.fxclub.gitlab.mentions.settings.GitLabSettingsState;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.components.Service;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
 
+import java.nio.file.Path;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongToIntFunction;
 
+/**
+ * Application-wide roster cache. Besides refreshing lazily when completion finds it stale, the service prefetches
+ * each source at about 80% of its TTL on the shared scheduled executor, so completion rarely sees an expired cache.
+ * Prefetching pauses while the IDE is in the background or no token is configured, backs off exponentially after
+ * failures, and stops when the service is disposed with the application.
+ * <p>
+ * Cache state lives in immutable snapshots behind atomic references: completion reads the current index without
+ * taking any lock, and callers that find a source already refreshing wait for that refresh instead of blocking on a
+ * monitor or starting another download.
+ * <p>
+ * Snapshots live in the directory shared by all JetBrains IDEs of the user. Several IDEs running at once take turns
+ * through a per-source file lock: the holder refreshes and writes the snapshot, the others wait for it and then
+ * adopt the newer snapshot after a cheap header check instead of asking GitLab themselves.
+ */
 @Service(Service.Level.APP)
 @Slf4j
-public final class GitLabUserService {
+public final class GitLabUserService implements Disposable {
     private final GitLabApiClient apiClient = new GitLabApiClient();
+    private final RemoteUserSearch remoteSearch = new RemoteUserSearch(apiClient);
+    /** Tests keep their snapshots in the sandbox instead of the directory shared with the user's IDEs. */
+    private final GitLabUserSnapshotStore snapshotStore = new GitLabUserSnapshotStore(
+            (ApplicationManager.getApplication().isUnitTestMode()
+                    ? Path.of(PathManager.getSystemPath()) : PathManager.getCommonDataPath()).resolve("gitlab-mentions"));
 
-    private volatile List<GitLabUser> groupMembers = Collections.emptyList();
-    private volatile long groupMembersFetchedAt = 0L;
+    /** Search index over the merged roster of all sources; rebuilt whenever a segment publishes new users. */
+    private final AtomicReference<IndexSnapshot> index = new AtomicReference<>(IndexSnapshot.EMPTY);
 
-    /** Clears cached group members. */
-    public void clearCache() { groupMembers = Collections.emptyList(); groupMembersFetchedAt = 0L; }
+    /** One cached roster per configured source, in configured order, for the host they were fetched from. */
+    private final AtomicReference<SegmentTable> segments = new AtomicReference<>(SegmentTable.EMPTY);
+
+    /** Full re-download after this many incremental refreshes, to pick up renames and deactivations. */
+    private static final int FULL_SYNC_EVERY = 12;
+    /** Overlap subtracted from the last sync time so clock skew cannot hide newly created users. */
+    private static final long DELTA_OVERLAP_SECONDS = 300;
+    private static final long CANCEL_POLL_MS = 100;
+    /** How long to wait for another IDE's refresh of the same source before fetching regardless. */
+    private static final long SHARED_LOCK_WAIT_MS = TimeUnit.MINUTES.toMillis(2);
+
+    /** Guards against scheduling more than one background refresh at a time. */
+    private final AtomicBoolean backgroundRefreshInFlight = new AtomicBoolean();
+
+    /** Prefetch point as a fraction of a source's TTL, randomized by +-{@link #PREFETCH_JITTER} to spread requests. */
+    private static final double PREFETCH_AT = 0.8;
+    private static final double PREFETCH_JITTER = 0.1;
+    private static final long MIN_PREFETCH_DELAY_MS = 5_000;
+    private static final long FAILURE_BACKOFF_BASE_MS = 30_000;
+    private static final long FAILURE_BACKOFF_MAX_MS = 30 * 60_000;
+
+    private final Object prefetchLock = new Object();
+    private ScheduledFuture<?> prefetchFuture = null;
+    /** True while no prefetch is scheduled because the IDE is inactive or unconfigured; cleared on activation. */
+    private boolean prefetchPaused = true;
+    private int prefetchFailures = 0;
+    private volatile ProgressIndicator prefetchIndicator = null;
+    private volatile boolean disposed = false;
+
+    /**
+     * The merged user index and group trie together with the segment rosters and group lists they were built from,
+     * to skip rebuilds when only timestamps moved.
+     */
+    private record IndexSnapshot(GitLabUserIndex index, List<GitLabRoster> sources,
+                                 NamespaceTrie namespaces, List<List<GitLabGroup>> groupSources) {
+        static final IndexSnapshot EMPTY = new IndexSnapshot(GitLabUserIndex.EMPTY, List.of(), NamespaceTrie.EMPTY, List.of());
+    }
+
+    /** Subgroup tree of a group source with the validators of its last listing. */
+    private record GroupTree(List<GitLabGroup> groups, String etag, int total) {
+        static final GroupTree EMPTY = new GroupTree(List.of(), null, -1);
+    }
+
+    /** Segments keyed by source, with the host and source settings they were created for. */
+    private record SegmentTable(String config, Map<String, Segment> byKey) {
+        static final SegmentTable EMPTY = new SegmentTable(null, Map.of());
+    }
+
+    /**
+     * Cache state of one source: its roster, TTL clock and delta-sync baseline. Immutable, so a refresh publishes
+     * all of it at once and readers never see a roster paired with another roster's timestamps.
+     *
+     * @param fetchedAt    TTL clock; 0 forces a refresh on next use
+     * @param lastSyncedAt last time the users were known to match the server; the baseline for delta refreshes
+     */
+    private record SegmentState(GitLabRoster roster, long fetchedAt, long lastSyncedAt,
+                                String membersEtag, int membersTotal, int incrementalRefreshes) {
+        static final SegmentState EMPTY = new SegmentState(GitLabRoster.EMPTY, 0L, 0L, null, -1, 0);
+
+        static SegmentState fullSync(GitLabRoster roster, long syncedAt) {
+            return new SegmentState(roster, syncedAt, syncedAt, null, -1, 0);
+        }
+
+        /** An incremental refresh that found {@code roster}; pass the current roster if nothing changed. */
+        SegmentState incremental(GitLabRoster roster, long syncedAt) {
+            return new SegmentState(roster, syncedAt, syncedAt, membersEtag, membersTotal, incrementalRefreshes + 1);
+        }
+
+        SegmentState withMembersBaseline(String etag, int total) {
+            return new SegmentState(roster, fetchedAt, lastSyncedAt, etag, total, incrementalRefreshes);
+        }
+
+        /** Another process confirmed this roster at {@code syncedAt}. */
+        SegmentState confirmedAt(long syncedAt) {
+            return new SegmentState(roster, syncedAt, syncedAt, membersEtag, membersTotal, incrementalRefreshes);
+        }
+    }
+
+    /** A running refresh of one segment; callers arriving meanwhile wait for its result instead of fetching again. */
+    private record Refresh(boolean full, CompletableFuture<Boolean> done) {}
+
+    /**
+     * Cached users of one source with its own TTL clock and delta-sync state. Readers take the current
+     * {@link SegmentState} without locking; at most one refresh per segment runs at a time, and sources refresh in
+     * parallel without invalidating each other.
+     */
+    private static final class Segment {
+        volatile GitLabSource source;
+        final AtomicReference<SegmentState> state = new AtomicReference<>(SegmentState.EMPTY);
+        final AtomicReference<Refresh> inFlight = new AtomicReference<>();
+        /** Only filled for group sources; refreshed together with the users. */
+        final AtomicReference<GroupTree> groups = new AtomicReference<>(GroupTree.EMPTY);
+        final AtomicBoolean diskSnapshotLoaded = new AtomicBoolean();
+        /** Generation of the shared snapshot file this segment's roster was loaded from or written as. */
+        volatile long sharedGeneration;
+        /** Set once the segment was dropped by a cache clear or settings change; guarded by the segment itself. */
+        private boolean retired;
+
+        Segment(GitLabSource source) {
+            this.source = source;
+        }
+
+        GitLabRoster roster() { return state.get().roster(); }
+
+        long ttlSeconds(int defaultTtlSeconds) {
+            return source.ttlSeconds() > 0 ? source.ttlSeconds() : defaultTtlSeconds;
+        }
+
+        /** True once {@code ttlFraction} of the TTL has elapsed; a fraction of 1 means expired. */
+        boolean isDue(long now, int defaultTtlSeconds, double ttlFraction) {
+            SegmentState s = state.get();
+            return s.roster().isEmpty() || (now - s.fetchedAt()) > ttlSeconds(defaultTtlSeconds) * ttlFraction;
+        }
+
+        boolean isStale(long now, int defaultTtlSeconds) {
+            return isDue(now, defaultTtlSeconds, 1.0);
+        }
+
+        boolean isTrusted() {
+            SegmentState s = state.get();
+            return !s.roster().isEmpty() && s.lastSyncedAt() > 0 && s.incrementalRefreshes() < FULL_SYNC_EVERY;
+        }
+
+        /** Fences refreshes still running for this segment: from now on they neither publish nor write snapshots. */
+        synchronized void retire() {
+            retired = true;
+        }
+
+        /** Runs {@code write} unless the segment was retired; a retire waits for a write already running. */
+        synchronized boolean ifCurrent(Runnable write) {
+            if (retired) return false;
+            write.run();
+            return true;
+        }
+    }
+
+    /**
+     * Clears cached users of all sources. Refreshes still running finish without publishing. The on-disk snapshots
+     * are kept and re-read as stale data on next use.
+     */
+    public void clearCache() {
+        SegmentTable cleared = segments.getAndSet(SegmentTable.EMPTY);
+        cleared.byKey().values().forEach(Segment::retire);
+        index.set(IndexSnapshot.EMPTY);
+        apiClient.getHttpCache().clear();
+        remoteSearch.clear();
+    }
+
+    /**
+     * Returns the segments for the configured host and sources. Segments of sources that are still configured
+     * survive settings changes untouched; removed sources drop out of the merged index, and a host change starts
+     * over.
+     */
+    private Map<String, Segment> currentSegments(GitLabSettingsState settings) {
+        String host = settings.hostUrl == null ? "" : settings.hostUrl.trim();
+        String config = host + '\n' + settings.scope + '\n' + settings.id + '\n' + settings.sources;
+        while (true) {
+            SegmentTable current = segments.get();
+            if (config.equals(current.config())) return current.byKey();
+            boolean sameHost = current.config() != null && current.config().startsWith(host + '\n');
+            List<GitLabSource> sources = settings.effectiveSources();
+            Map<String, Segment> next = new LinkedHashMap<>();
+            for (GitLabSource source : sources) {
+                Segment existing = sameHost ? current.byKey().get(source.key()) : null;
+                next.put(source.key(), existing != null ? existing : new Segment(source));
+            }
+            if (!segments.compareAndSet(current, new SegmentTable(config, Collections.unmodifiableMap(next)))) continue;
+            for (Segment old : current.byKey().values()) {
+                // A refresh of a dropped source would otherwise save its users under the new host's snapshot
+                if (next.get(old.source.key()) != old) old.retire();
+            }
+            for (GitLabSource source : sources) next.get(source.key()).source = source; // the TTL may have changed
+            boolean dropped = !next.keySet().containsAll(current.byKey().keySet()) || !sameHost;
+            if (dropped) rebuildIndex();
+            return Collections.unmodifiableMap(next);
+        }
+    }
+
+    /**
+     * Lazily seeds empty segments from their persisted snapshots. Loaded data is treated as expired so that a
+     * background refresh follows, but completion can answer immediately. That refresh skips the download if the
+     * shared snapshot is still within its TTL.
+     */
+    private void loadDiskSnapshotsIfEmpty(GitLabSettingsState settings, Collection<Segment> targets) {
+        boolean loadedAny = false;
+        for (Segment seg : targets) {
+            SegmentState empty = seg.state.get();
+            if (!empty.roster().isEmpty() || !seg.diskSnapshotLoaded.compareAndSet(false, true)) continue;
+            GitLabUserSnapshotStore.Snapshot snapshot = snapshotStore.load(settings.hostUrl, settings.privateToken, seg.source.key());
+            if (snapshot.roster().isEmpty()) continue;
+            // A refresh that published meanwhile wins; its data is newer than the snapshot
+            SegmentState loaded = new SegmentState(snapshot.roster(), 0L, snapshot.fetchedAtEpochSec(), null, -1, 0);
+            if (!seg.state.compareAndSet(empty, loaded)) continue;
+            seg.sharedGeneration = snapshot.generation();
+            loadedAny = true;
+            log.info("Loaded {} users of {} from disk snapshot fetched at {}",
+                    snapshot.roster().size(), seg.source.key(), snapshot.fetchedAtEpochSec());
+        }
+        if (loadedAny) rebuildIndex();
+    }
 
     private boolean shouldRefreshGroupMembers(GitLabSettingsState settings) {
         long now = Instant.now().getEpochSecond();
-        return groupMembers.isEmpty() || (now - groupMembersFetchedAt) > settings.cacheTtlSeconds;
+        if (index.get().index().isEmpty()) return true;
+        for (Segment seg : currentSegments(settings).values()) {
+            if (seg.isStale(now, settings.cacheTtlSeconds)) return true;
+        }
+        return false;
     }
 
-    /** Loads group members or all active users into cache respecting TTL (synchronous). */
-    public synchronized void ensureGroupMembersLoaded() {
+    /** Loads stale sources into cache respecting their TTLs (synchronous). */
+    public void ensureGroupMembersLoaded() {
         GitLabSettingsState settings = GitLabSettingsState.getInstance();
         if (!shouldRefreshGroupMembers(settings)) return;
         try {
-            List<GitLabUser> fetched = apiClient.listAllMembersOrActiveUsers();
-            if (!fetched.isEmpty()) {
-                groupMembers = fetched;
-                groupMembersFetchedAt = Instant.now().getEpochSecond();
-                log.info("Loaded {} users into cache", fetched.size());
+            int count = refreshMembers();
+            if (count > 0) {
+                log.info("Loaded {} users into cache", count);
             } else {
                 log.warn("Synchronous load returned 0 users");
             }
+        } catch (ProcessCanceledException pce) {
+            throw pce;
         } catch (Exception ex) {
             log.warn("Synchronous load failed", ex);
         }
     }
 
-    /** Force reload group members or all active users ignoring TTL; returns count fetched. */
-    public synchronized int forceReloadMembers() {
-        List<GitLabUser> fetched = apiClient.listAllMembersOrActiveUsers();
-        if (!fetched.isEmpty()) {
-            groupMembers = fetched;
-            groupMembersFetchedAt = Instant.now().getEpochSecond();
-            return fetched.size();
+    /**
+     * Stale-while-revalidate: returns immediately and, if the cache is empty or a source is past its TTL, schedules
+     * a single cancellable background refresh. Callers keep serving the current snapshot until the refresh swaps it.
+     */
+    public void refreshInBackgroundIfStale() {
+        GitLabSettingsState settings = GitLabSettingsState.getInstance();
+        loadDiskSnapshotsIfEmpty(settings, currentSegments(settings).values());
+        ensurePrefetchScheduled();
+        if (!shouldRefreshGroupMembers(settings)) return;
+        if (!backgroundRefreshInFlight.compareAndSet(false, true)) return;
+        Task.Backgroundable task = new Task.Backgroundable(null, "Refreshing GitLab users", true) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                indicator.setIndeterminate(true);
+                // Re-check: a synchronous reload may have completed while this task was queued
+                if (!shouldRefreshGroupMembers(GitLabSettingsState.getInstance())) return;
+                refreshMembers();
+            }
+
+            @Override
+            public void onThrowable(@NotNull Throwable error) {
+                log.warn("Background refresh failed", error);
+            }
+
+            @Override
+            public void onFinished() {
+                backgroundRefreshInFlight.set(false);
+            }
+        };
+        try {
+            // Background indicators are created on the EDT; completion calls this from a pooled read-action thread
+            ApplicationManager.getApplication().invokeLater(
+                    () -> ProgressManager.getInstance().run(task), ModalityState.any());
+        } catch (RuntimeException ex) {
+            backgroundRefreshInFlight.set(false);
+            throw ex;
+        }
+    }
+
+    /** Force reload all sources concurrently ignoring TTLs; returns the merged user count, or 0 if all failed. */
+    public int forceReloadMembers() {
+        Map<String, Segment> current = currentSegments(GitLabSettingsState.getInstance());
+        int refreshed = refreshConcurrently(current.values(), true, 1.0);
+        rebuildIndex();
+        ensurePrefetchScheduled();
+        return refreshed > 0 ? index.get().index().size() : 0;
+    }
+
+    /**
+     * TTL refresh: refreshes only the sources past their own TTL, concurrently, applying deltas where a segment
+     * can be trusted. Returns the merged user count afterwards, or 0 if no stale source could be fetched.
+     */
+    public int refreshMembers() {
+        return refreshDue(1.0);
+    }
+
+    /** Refreshes the sources that reached {@code ttlFraction} of their TTL; see {@link #refreshMembers()}. */
+    private int refreshDue(double ttlFraction) {
+        GitLabSettingsState settings = GitLabSettingsState.getInstance();
+        long now = Instant.now().getEpochSecond();
+        List<Segment> due = new ArrayList<>();
+        for (Segment seg : currentSegments(settings).values()) {
+            if (seg.isDue(now, settings.cacheTtlSeconds, ttlFraction)) due.add(seg);
+        }
+        if (due.isEmpty()) return index.get().index().size();
+        int refreshed = refreshConcurrently(due, false, ttlFraction);
+        rebuildIndex();
+        return refreshed > 0 ? index.get().index().size() : 0;
+    }
+
+    /**
+     * Starts or resumes prefetching; a no-op while a prefetch is already scheduled. Called on first use and by
+     * {@link PrefetchActivationListener} whenever the IDE regains focus.
+     */
+    public void ensurePrefetchScheduled() {
+        synchronized (prefetchLock) {
+            if (!prefetchPaused || disposed) return;
+            prefetchPaused = false;
+            prefetchFailures = 0;
+            schedulePrefetch(nextPrefetchDelayMs(GitLabSettingsState.getInstance()));
+        }
+    }
+
+    private void schedulePrefetch(long delayMs) {
+        synchronized (prefetchLock) {
+            if (disposed) return;
+            if (prefetchFuture != null) prefetchFuture.cancel(false);
+            prefetchFuture = AppExecutorUtil.getAppScheduledExecutorService()
+                    .schedule(this::prefetchTick, delayMs, TimeUnit.MILLISECONDS);
         }
-        return 0;
     }
 
-    public List<GitLabUser> getGroupMembersSnapshot() { return groupMembers; }
+    /**
+     * Delay until the earliest source reaches its jittered prefetch point. Empty sources are due right away,
+     * but never sooner than {@link #MIN_PREFETCH_DELAY_MS} so the lazy completion path gets the first go.
+     */
+    private long nextPrefetchDelayMs(GitLabSettingsState settings) {
+        long nowMs = System.currentTimeMillis();
+        double fraction = PREFETCH_AT * (1 + ThreadLocalRandom.current().nextDouble(-PREFETCH_JITTER, PREFETCH_JITTER));
+        long earliestMs = Long.MAX_VALUE;
+        for (Segment seg : currentSegments(settings).values()) {
+            SegmentState s = seg.state.get();
+            long dueMs = s.roster().isEmpty()
+                    ? nowMs
+                    : (s.fetchedAt() + (long) (seg.ttlSeconds(settings.cacheTtlSeconds) * fraction)) * 1000L;
+            earliestMs = Math.min(earliestMs, dueMs);
+        }
+        return Math.max(MIN_PREFETCH_DELAY_MS, earliestMs == Long.MAX_VALUE ? 0 : earliestMs - nowMs);
+    }
+
+    /** Exponential backoff with jitter between 50% and 100% of the step, capped at 30 minutes. */
+    private static long failureBackoffMs(int failures) {
+        long step = FAILURE_BACKOFF_BASE_MS << Math.min(failures - 1, 10);
+        long capped = Math.min(FAILURE_BACKOFF_MAX_MS, step);
+        return capped / 2 + ThreadLocalRandom.current().nextLong(capped / 2 + 1);
+    }
+
+    private void prefetchTick() {
+        if (disposed) return;
+        GitLabSettingsState settings = GitLabSettingsState.getInstance();
+        boolean configured = settings.privateToken != null && !settings.privateToken.isBlank();
+        if (!configured || !ApplicationManager.getApplication().isActive()) {
+            // Nobody is typing mentions; resume when the IDE is activated or completion asks for users again
+            synchronized (prefetchLock) {
+                prefetchPaused = true;
+            }
+            return;
+        }
+        if (!backgroundRefreshInFlight.compareAndSet(false, true)) {
+            schedulePrefetch(MIN_PREFETCH_DELAY_MS);
+            return;
+        }
+        boolean ok;
+        ProgressIndicator indicator = new EmptyProgressIndicator();
+        prefetchIndicator = indicator;
+        try {
+            // Refresh everything whose prefetch point may already have passed under the lowest jitter
+            double dueFraction = PREFETCH_AT * (1 - PREFETCH_JITTER);
+            ok = ProgressManager.getInstance().runProcess(() -> refreshDue(dueFraction), indicator) > 0;
+        } catch (ProcessCanceledException pce) {
+            return; // disposed
+        } catch (RuntimeException ex) {
+            log.warn("Scheduled prefetch failed", ex);
+            ok = false;
+        } finally {
+            prefetchIndicator = null;
+            backgroundRefreshInFlight.set(false);
+        }
+        synchronized (prefetchLock) {
+            prefetchFailures = ok ? 0 : prefetchFailures + 1;
+            long delayMs = ok ? nextPrefetchDelayMs(settings) : failureBackoffMs(prefetchFailures);
+            if (!ok) log.info("Prefetch failed {} time(s) in a row; retrying in {} s", prefetchFailures, delayMs / 1000);
+            schedulePrefetch(delayMs);
+        }
+    }
+
+    /**
+     * Refreshes each segment on a pooled thread under the caller's progress indicator, so cancelling the calling
+     * task cancels every source. Returns the number of segments that ended up with fresh data.
+     */
+    private int refreshConcurrently(Collection<Segment> targets, boolean full, double ttlFraction) {
+        AtomicInteger refreshed = new AtomicInteger();
+        if (targets.size() == 1) {
+            if (refreshSegment(targets.iterator().next(), full, ttlFraction)) refreshed.incrementAndGet();
+            return refreshed.get();
+        }
+        ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+        List<Future<?>> futures = new ArrayList<>(targets.size());
+        boolean completed = false;
+        try {
+            for (Segment seg : targets) {
+                Runnable work = () -> {
+                    if (refreshSegment(seg, full, ttlFraction)) refreshed.incrementAndGet();
+                };
+                futures.add(AppExecutorUtil.getAppExecutorService().submit(indicator == null ? work
+                        : () -> ProgressManager.getInstance().executeProcessUnderProgress(work, indicator)));
+            }
+            for (Future<?> f : futures) awaitSegment(f);
+            completed = true;
+        } finally {
+            if (!completed) futures.forEach(f -> f.cancel(true));
+        }
+        return refreshed.get();
+    }
+
+    private static void awaitSegment(Future<?> future) {
+        while (true) {
+            ProgressManager.checkCanceled();
+            try {
+                future.get(CANCEL_POLL_MS, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException ignored) {
+                // poll cancellation again
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new ProcessCanceledException(ex);
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof ProcessCanceledException pce) throw pce;
+                log.warn("Source refresh failed", ex.getCause());
+                return;
+            }
+        }
+    }
 
-    /** Filters cached group members by substring (case-insensitive) against username or name. */
+    /**
+     * Refreshes one segment: a delta when {@code full} is false and the segment can be trusted, otherwise a full
+     * reload of that source only. A failed fetch keeps the segment's previous users.
+     * <p>
+     * Concurrent callers are coalesced: whoever finds no refresh in flight runs it, everyone else waits for that
+     * result. A full reload does not settle for a delta that was already running and starts its own afterwards.
+     */
+    private boolean refreshSegment(Segment seg, boolean full, double ttlFraction) {
+        while (true) {
+            Refresh running = seg.inFlight.get();
+            if (running != null) {
+                Boolean result = awaitRefresh(running.done());
+                // null: the running refresh was cancelled by its caller, so take over
+                if (result != null && (running.full() || !full)) return result;
+                continue;
+            }
+            Refresh mine = new Refresh(full, new CompletableFuture<>());
+            if (!seg.inFlight.compareAndSet(null, mine)) continue;
+            try {
+                boolean ok = fetchSegment(seg, full, ttlFraction);
+                seg.inFlight.compareAndSet(mine, null);
+                mine.done().complete(ok);
+                return ok;
+            } catch (Throwable t) {
+                seg.inFlight.compareAndSet(mine, null);
+                mine.done().completeExceptionally(t);
+                throw t;
+            }
+        }
+    }
+
+    /** Waits for another caller's refresh of the same segment; returns null if that refresh was cancelled. */
+    private static Boolean awaitRefresh(CompletableFuture<Boolean> done) {
+        while (true) {
+            ProgressManager.checkCanceled();
+            try {
+                return done.get(CANCEL_POLL_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ignored) {
+                // poll cancellation again
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new ProcessCanceledException(ex);
+            } catch (ExecutionException ex) {
+                return ex.getCause() instanceof ProcessCanceledException ? null : Boolean.FALSE;
+            }
+        }
+    }
+
+    private boolean fetchSegment(Segment seg, boolean full, double ttlFraction) {
+        GitLabSettingsState settings = GitLabSettingsState.getInstance();
+        if (!full) {
+            // Another caller may have refreshed this segment just before we took over
+            if (!seg.isDue(Instant.now().getEpochSecond(), settings.cacheTtlSeconds, ttlFraction)) return true;
+            // ... or another IDE, in which case its snapshot is newer than ours
+            if (adoptSharedSnapshot(seg, settings)
+                    && !seg.isDue(Instant.now().getEpochSecond(), settings.cacheTtlSeconds, ttlFraction)) return true;
+        }
+        GitLabUserSnapshotStore.RefreshLock lock = snapshotStore.tryLock(settings.hostUrl, settings.privateToken, seg.source.key());
+        boolean waited = false;
+        long deadline = System.currentTimeMillis() + SHARED_LOCK_WAIT_MS;
+        while (lock == null) {
+            if (System.currentTimeMillis() > deadline) {
+                log.info("Another IDE still refreshes {}; fetching it here too", seg.source.key());
+                lock = GitLabUserSnapshotStore.RefreshLock.NONE;
+                break;
+            }
+            waited = true;
+            sleepCancellably(CANCEL_POLL_MS);
+            lock = snapshotStore.tryLock(settings.hostUrl, settings.privateToken, seg.source.key());
+        }
+        try {
+            // The IDE we waited for has just published what we were about to fetch
+            if (waited && !full && adoptSharedSnapshot(seg, settings)
+                    && !seg.isDue(Instant.now().getEpochSecond(), settings.cacheTtlSeconds, ttlFraction)) return true;
+            return fetchSegmentLocked(seg, settings, full);
+        } finally {
+            lock.close();
+        }
+    }
+
+    /** Refreshes a segment while holding its shared refresh lock; see {@link #fetchSegment}. */
+    private boolean fetchSegmentLocked(Segment seg, GitLabSettingsState settings, boolean full) {
+        if (!full && seg.isTrusted() && applyDelta(seg, settings)) {
+            GitLabMetrics.INCREMENTAL_REFRESHES.increment();
+            refreshGroups(seg, false);
+            return true;
+        }
+        long syncStartedAt = Instant.now().getEpochSecond();
+        long startedNanos = System.nanoTime();
+        GitLabRoster fetched;
+        try {
+            fetched = apiClient.listUsers(seg.source);
+        } catch (ProcessCanceledException pce) {
+            log.info("Reload of {} cancelled; keeping {} cached users", seg.source.key(), seg.roster().size());
+            throw pce;
+        }
+        if (fetched.isEmpty()) {
+            GitLabMetrics.FAILED_REFRESHES.increment();
+            return false;
+        }
+        GitLabMetrics.FULL_SYNC.recordSince(startedNanos);
+        GitLabMetrics.FULL_SYNCS.increment();
+        if (!publish(seg, settings, SegmentState.fullSync(fetched, syncStartedAt))) return false;
+        captureMembersBaseline(seg);
+        refreshGroups(seg, true);
+        return true;
+    }
+
+    /**
+     * Loads the shared snapshot of a segment if another process wrote a newer one, or takes over its fetched-at time
+     * if it only confirmed the same users. Reads just the header when nothing changed. Returns true if the segment
+     * was updated.
+     */
+    private boolean adoptSharedSnapshot(Segment seg, GitLabSettingsState settings) {
+        GitLabUserSnapshotStore.Header header = snapshotStore.readHeader(settings.hostUrl, settings.privateToken, seg.source.key());
+        SegmentState current = seg.state.get();
+        // A snapshot loaded at startup has no TTL clock yet, so a fresh file written meanwhile still counts as news
+        if (header.generation() == 0 || header.fetchedAtEpochSec() <= current.fetchedAt()) return false;
+        if (header.generation() == seg.sharedGeneration && !current.roster().isEmpty()) {
+            seg.state.set(current.confirmedAt(header.fetchedAtEpochSec()));
+            return true;
+        }
+        GitLabUserSnapshotStore.Snapshot snapshot = snapshotStore.load(settings.hostUrl, settings.privateToken, seg.source.key());
+        if (snapshot.roster().isEmpty() || snapshot.fetchedAtEpochSec() <= current.fetchedAt()) return false;
+        // Its member validators are not shared, so the next refresh of our own starts with a full listing
+        seg.state.set(SegmentState.fullSync(snapshot.roster(), snapshot.fetchedAtEpochSec()));
+        seg.sharedGeneration = snapshot.generation();
+        log.info("Adopted {} users of {} refreshed by another IDE", snapshot.roster().size(), seg.source.key());
+        // The group tree is not part of the snapshot; list it once, later refreshes only probe it
+        if (seg.groups.get() == GroupTree.EMPTY) refreshGroups(seg, true);
+        rebuildIndex();
+        return true;
+    }
+
+    private static void sleepCancellably(long millis) {
+        ProgressManager.checkCanceled();
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ProcessCanceledException(ex);
+        }
+        ProgressManager.checkCanceled();
+    }
+
+    /**
+     * Group sources also provide their subgroup tree for group mentions. An incremental refresh only lists it again
+     * when a probe of the descendant groups sees a change; a failed listing keeps the previous tree.
+     */
+    private void refreshGroups(Segment seg, boolean full) {
+        if (seg.source.kind() != GitLabSource.Kind.GROUP) return;
+        GroupTree current = seg.groups.get();
+        if (!full && current.etag() != null) {
+            GitLabApiClient.MembersProbe probe = apiClient.probeDescendantGroups(seg.source, current.etag());
+            boolean unchanged = probe != null
+                    && (probe.total() < 0 || probe.total() == current.total())
+                    && (probe.notModified() || current.etag().equals(probe.etag()));
+            if (unchanged) return;
+        }
+        List<GitLabGroup> groups = apiClient.listGroupTree(seg.source);
+        if (groups == null) return;
+        GitLabApiClient.MembersProbe baseline = apiClient.probeDescendantGroups(seg.source, null);
+        seg.groups.set(new GroupTree(List.copyOf(groups),
+                baseline == null ? null : baseline.etag(), baseline == null ? -1 : baseline.total()));
+    }
+
+    private boolean applyDelta(Segment seg, GitLabSettingsState settings) {
+        return seg.source.kind() == GitLabSource.Kind.USERS
+                ? mergeNewActiveUsers(seg, settings)
+                : refreshMembersIfUnchanged(seg, settings);
+    }
+
+    /** Member rosters have no "changed since" filter: confirm nothing changed, otherwise ask for a full reload. */
+    private boolean refreshMembersIfUnchanged(Segment seg, GitLabSettingsState settings) {
+        SegmentState current = seg.state.get();
+        if (current.membersEtag() == null) return false;
+        GitLabApiClient.MembersProbe probe = apiClient.probeMembers(seg.source, current.membersEtag());
+        if (probe == null) return false;
+        boolean sameTotal = probe.total() < 0 || probe.total() == current.membersTotal();
+        boolean sameFirstPage = probe.notModified() || current.membersEtag().equals(probe.etag());
+        if (!sameTotal || !sameFirstPage) {
+            log.info("Members of {} changed (total {} -> {}); full reload", seg.source.key(), current.membersTotal(), probe.total());
+            return false;
+        }
+        confirmUnchanged(seg, settings, Instant.now().getEpochSecond());
+        return true;
+    }
+
+    /** Instance-wide rosters: fetch only users created since the last sync and merge them by id. */
+    private boolean mergeNewActiveUsers(Segment seg, GitLabSettingsState settings) {
+        SegmentState current = seg.state.get();
+        long syncStartedAt = Instant.now().getEpochSecond();
+        List<GitLabUser> created = apiClient.listActiveUsersCreatedAfter(
+                Instant.ofEpochSecond(current.lastSyncedAt() - DELTA_OVERLAP_SECONDS));
+        if (created == null) return false;
+        if (created.isEmpty()) {
+            confirmUnchanged(seg, settings, syncStartedAt);
+            return true;
+        }
+        GitLabRoster merged = mergeInto(current.roster(), created);
+        if (!publish(seg, settings, current.incremental(merged, syncStartedAt))) return false;
+        log.info("Merged {} new users into {} cache of {}", created.size(), seg.source.key(), merged.size());
+        return true;
+    }
+
+    /** Records the validators the next incremental member refresh compares against. */
+    private void captureMembersBaseline(Segment seg) {
+        if (seg.source.kind() == GitLabSource.Kind.USERS) return;
+        GitLabApiClient.MembersProbe probe = apiClient.probeMembers(seg.source, null);
+        if (probe == null || probe.etag() == null) return;
+        // Only the refresh owning this segment writes its state, so a plain read-modify-write is safe
+        seg.state.set(seg.state.get().withMembersBaseline(probe.etag(), probe.total()));
+    }
+
+    /**
+     * Swaps in a segment's new state and persists its users for the next IDE start. Returns false, writing nothing,
+     * if the segment was retired while the refresh ran.
+     */
+    private boolean publish(Segment seg, GitLabSettingsState settings, SegmentState next) {
+        return seg.ifCurrent(() -> {
+            seg.state.set(next);
+            long generation = snapshotStore.save(settings.hostUrl, settings.privateToken, seg.source.key(), next.roster(), next.lastSyncedAt());
+            if (generation > 0) seg.sharedGeneration = generation;
+        });
+    }
+
+    /** Records a refresh that found nothing new, so other IDEs sharing the snapshot skip theirs. */
+    private void confirmUnchanged(Segment seg, GitLabSettingsState settings, long syncedAt) {
+        seg.ifCurrent(() -> {
+            seg.state.set(seg.state.get().incremental(seg.roster(), syncedAt));
+            snapshotStore.touch(settings.hostUrl, settings.privateToken, seg.source.key(), syncedAt);
+        });
+    }
+
+    /**
+     * Merges all segments, in configured order, into one roster deduplicated by user id and swaps in a new search
+     * index built off the read path. A user listed by several sources keeps the first position it was seen at.
+     * The group trie is rebuilt the same way, and each is reused when its inputs did not change.
+     * Lock-free: if another rebuild published first, the segments are re-read and merged again unless that rebuild
+     * already saw the same rosters.
+     */
+    private void rebuildIndex() {
+        while (true) {
+            IndexSnapshot previous = index.get();
+            Collection<Segment> current = segments.get().byKey().values();
+            List<GitLabRoster> sources = new ArrayList<>(current.size());
+            List<List<GitLabGroup>> groupSources = new ArrayList<>(current.size());
+            int total = 0;
+            for (Segment seg : current) {
+                GitLabRoster roster = seg.roster();
+                sources.add(roster);
+                total += roster.size();
+                groupSources.add(seg.groups.get().groups());
+            }
+            boolean sameUsers = sameInstances(sources, previous.sources());
+            boolean sameGroups = sameInstances(groupSources, previous.groupSources());
+            if (sameUsers && sameGroups) return;
+            long startedNanos = System.nanoTime();
+            GitLabUserIndex next = sameUsers ? previous.index() : mergeIndex(sources, total);
+            NamespaceTrie namespaces = sameGroups ? previous.namespaces() : NamespaceTrie.of(groupSources);
+            if (index.compareAndSet(previous, new IndexSnapshot(next, sources, namespaces, groupSources))) {
+                GitLabMetrics.INDEX_BUILD.recordSince(startedNanos);
+                return;
+            }
+        }
+    }
+
+    private static GitLabUserIndex mergeIndex(List<GitLabRoster> sources, int total) {
+        GitLabRoster.Builder merged = new GitLabRoster.Builder(total);
+        LongIntHashMap seen = new LongIntHashMap(total, -1);
+        for (GitLabRoster roster : sources) {
+            for (int i = 0; i < roster.size(); i++) {
+                if (seen.get(roster.id(i)) >= 0) continue;
+                seen.put(roster.id(i), merged.size());
+                merged.add(roster, i);
+            }
+        }
+        return merged.size() == 0 ? GitLabUserIndex.EMPTY : new GitLabUserIndex(merged.build());
+    }
+
+    /** Returns {@code base} with {@code updates} applied: known ids are replaced in place, new ones appended. */
+    private static GitLabRoster mergeInto(GitLabRoster base, List<GitLabUser> updates) {
+        LongIntHashMap updateAt = new LongIntHashMap(updates.size(), -1);
+        for (int i = 0; i < updates.size(); i++) updateAt.put(updates.get(i).getId(), i);
+        boolean[] applied = new boolean[updates.size()];
+        GitLabRoster.Builder merged = new GitLabRoster.Builder(base.size() + updates.size());
+        for (int i = 0; i < base.size(); i++) {
+            int at = updateAt.get(base.id(i));
+            if (at < 0) {
+                merged.add(base, i);
+            } else if (!applied[at]) {
+                merged.add(updates.get(at));
+                applied[at] = true;
+            }
+        }
+        for (int i = 0; i < updates.size(); i++) {
+            // The last duplicate of an id within updates wins, matching the map above
+            if (!applied[i] && updateAt.get(updates.get(i).getId()) == i) merged.add(updates.get(i));
+        }
+        return merged.build();
+    }
+
+    private static boolean sameInstances(List<?> a, List<?> b) {
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i) != b.get(i)) return false;
+        }
+        return true;
+    }
+
+    /** The merged, deduplicated roster behind completion. */
+    public GitLabRoster getRoster() { return index.get().index().roster(); }
+
+    /**
+     * The search index over {@link #getRoster()}. Immutable; a new instance replaces it whenever the roster changes,
+     * so callers may key per-snapshot data on its identity.
+     */
+    public GitLabUserIndex getIndex() { return index.get().index(); }
+
+    /** Cached groups and subgroups completing {@code prefix} one path segment at a time; see {@link NamespaceTrie}. */
+    public List<GitLabGroup> filterGroups(String prefix) {
+        return index.get().namespaces().complete(prefix, GitLabSettingsState.getInstance().maxUsersPerQuery);
+    }
+
+    public int getGroupCount() { return index.get().namespaces().size(); }
+
+    /** True if a configured group source lists the group {@code fullPath} (ignoring case) or one of its subgroups. */
+    public boolean isCachedGroup(String fullPath) { return index.get().namespaces().contains(fullPath); }
+
+    /** The cached user with this username (ignoring case), or null if no configured source lists it. */
+    public GitLabUser findByUsername(String username) {
+        GitLabUserIndex current = index.get().index();
+        int i = current.indexOfUsername(username);
+        return i < 0 ? null : current.roster().user(i);
+    }
+
+    /** Cached user count per configured source, in configured order. */
+    public Map<GitLabSource, Integer> getSourceSizes() {
+        Map<GitLabSource, Integer> sizes = new LinkedHashMap<>();
+        for (Segment seg : currentSegments(GitLabSettingsState.getInstance()).values()) {
+            sizes.put(seg.source, seg.roster().size());
+        }
+        return sizes;
+    }
+
+    /** Seconds since each configured source was last fetched or confirmed unchanged, or -1 if it never was. */
+    public Map<GitLabSource, Long> getSourceAges() {
+        long now = Instant.now().getEpochSecond();
+        Map<GitLabSource, Long> ages = new LinkedHashMap<>();
+        for (Segment seg : currentSegments(GitLabSettingsState.getInstance()).values()) {
+            long syncedAt = seg.state.get().lastSyncedAt();
+            ages.put(seg.source, syncedAt > 0 ? now - syncedAt : -1L);
+        }
+        return ages;
+    }
+
+    public GitLabHttpCache getHttpCache() { return apiClient.getHttpCache(); }
+
+    /** The client behind this service, shared so that other lookups go through the same cache and request limits. */
+    GitLabApiClient getApiClient() { return apiClient; }
+
+    /** Returns the best-ranked cached users for the query (prefix, substring or word-anchored fuzzy match). */
     public List<GitLabUser> filterGroupMembers(String query) {
-        if (groupMembers.isEmpty()) return Collections.emptyList();
-        String q = query.toLowerCase(Locale.ROOT);
-        int limit = GitLabSettingsState.getInstance().maxUsersPerQuery;
-        return groupMembers.stream()
-                .filter(u -> {
-                    String uname = u.getUsername();
-                    String name = u.getName();
-                    return uname.toLowerCase(Locale.ROOT).contains(q) || name != null && name.toLowerCase(Locale.ROOT).contains(q);
-                })
-                .limit(limit)
-                .toList();
+        return filterGroupMembers(query, null);
+    }
+
+    /** As {@link #filterGroupMembers(String)}, lifting users by {@code boost} points, e.g. from mention frecency. */
+    public List<GitLabUser> filterGroupMembers(String query, LongToIntFunction boost) {
+        GitLabUserIndex current = index.get().index();
+        if (current.isEmpty()) return Collections.emptyList();
+        return current.search(query, GitLabSettingsState.getInstance().maxUsersPerQuery, boost);
+    }
+
+    /**
+     * The server's answer for {@code query} from earlier searches, without I/O, or null if there is none yet; see
+     * {@link #searchServerAsync}. Empty without a token.
+     */
+    public List<GitLabUser> cachedServerSearch(String query) {
+        GitLabSettingsState settings = GitLabSettingsState.getInstance();
+        if (settings.privateToken == null || settings.privateToken.isBlank() || disposed) return Collections.emptyList();
+        return remoteSearch.cached(host(settings), query, settings.maxUsersPerQuery);
+    }
+
+    /**
+     * Searches all users on the server for {@code query} in the background, for prefixes the cache has no answer to,
+     * e.g. users outside the configured sources or before the first fetch. The future completes once
+     * {@link #cachedServerSearch} has the answer, and is cancelled if a newer query replaced this one before it was
+     * sent; see {@link RemoteUserSearch}. Empty without a token.
+     */
+    public CompletableFuture<List<GitLabUser>> searchServerAsync(String query) {
+        GitLabSettingsState settings = GitLabSettingsState.getInstance();
+        if (settings.privateToken == null || settings.privateToken.isBlank() || disposed) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        return remoteSearch.searchAsync(host(settings), query, settings.maxUsersPerQuery);
+    }
+
+    private static String host(GitLabSettingsState settings) {
+        return settings.hostUrl == null ? "" : settings.hostUrl.trim();
+    }
+
+    @Override
+    public void dispose() {
+        disposed = true;
+        synchronized (prefetchLock) {
+            if (prefetchFuture != null) prefetchFuture.cancel(false);
+            prefetchFuture = null;
+        }
+        ProgressIndicator indicator = prefetchIndicator;
+        if (indicator != null) indicator.cancel();
     }
 
     @Override
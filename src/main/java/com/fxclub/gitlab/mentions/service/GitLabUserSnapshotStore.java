@@ -0,0 +1,264 @@
+package com.fxclub.gitlab.mentions.service;
+
+import com.fxclub.gitlab.mentions.model.GitLabRoster;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Persists roster snapshots as compact binary files so completion is warm right after IDE start, and shares them
+ * between IDE processes running at the same time.
+ * <p>
+ * One file per (host URL, token, source key); the token only enters the file name as part of a SHA-256 digest, so
+ * snapshots fetched with one account's visibility are never served to another and the token is not recoverable from
+ * the directory. Layout: magic, version, generation, fetched-at epoch seconds, record count,
+ * then length-prefixed records {@code id:long, username, name, avatarUrl, state, flags:byte} where strings are
+ * u16+utf8 and a length of 0xFFFF marks null. Bit 0 of the flags is the bot flag. Files are written to a temp file
+ * and atomically moved into place, and read into a heap buffer: a mapping would pin the file until it is garbage
+ * collected, and on Windows the next process's atomic move onto a mapped file fails.
+ * <p>
+ * The generation is bumped whenever the users are rewritten, while {@link #touch} only moves the fetched-at time of
+ * a roster confirmed unchanged; other processes compare the {@link Header} to decide whether to reload. Refreshes
+ * are serialized across processes by a lock on a sibling {@code .lock} file, see {@link #tryLock}.
+ */
+@Slf4j
+public class GitLabUserSnapshotStore {
+    private static final int MAGIC = 0x474C4D53; // "GLMS"
+    private static final int VERSION = 3;
+    private static final int HEADER_BYTES = 28;
+    private static final int FETCHED_AT_OFFSET = 16;
+    private static final int FLAG_BOT = 1;
+    private static final int NULL_LENGTH = 0xFFFF;
+
+    private final Path dir;
+
+    public GitLabUserSnapshotStore(Path dir) {
+        this.dir = dir;
+    }
+
+    /** Loaded snapshot together with its generation and the time its users were last confirmed with GitLab. */
+    public record Snapshot(GitLabRoster roster, long generation, long fetchedAtEpochSec) {
+        static final Snapshot EMPTY = new Snapshot(GitLabRoster.EMPTY, 0L, 0L);
+    }
+
+    /** The fixed-size start of a snapshot file; {@link #NONE} if there is no compatible file. */
+    public record Header(long generation, long fetchedAtEpochSec) {
+        public static final Header NONE = new Header(0L, 0L);
+    }
+
+    /**
+     * Exclusive right to refresh one source across all IDE processes sharing the directory. {@link #NONE} stands in
+     * when the lock file cannot be used at all, so callers proceed unlocked rather than never refreshing.
+     */
+    public static final class RefreshLock implements AutoCloseable {
+        public static final RefreshLock NONE = new RefreshLock(null, null);
+
+        private final FileChannel channel;
+        private final FileLock lock;
+
+        private RefreshLock(FileChannel channel, FileLock lock) {
+            this.channel = channel;
+            this.lock = lock;
+        }
+
+        @Override
+        public void close() {
+            if (channel == null) return;
+            try {
+                lock.release();
+                channel.close();
+            } catch (IOException ex) {
+                log.debug("Failed to release snapshot lock", ex);
+            }
+        }
+    }
+
+    /** Reads only the header of the snapshot for the given key. */
+    public Header readHeader(String hostUrl, String token, String sourceKey) {
+        Path file = fileFor(hostUrl, token, sourceKey);
+        if (!Files.isRegularFile(file)) return Header.NONE;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES);
+            while (buf.hasRemaining() && ch.read(buf) >= 0) {
+                // fill the header
+            }
+            buf.flip();
+            if (buf.remaining() < HEADER_BYTES || buf.getInt() != MAGIC || buf.getInt() != VERSION) return Header.NONE;
+            return new Header(buf.getLong(), buf.getLong());
+        } catch (IOException ex) {
+            log.debug("Failed to read user snapshot header {}", file, ex);
+            return Header.NONE;
+        }
+    }
+
+    /** Reads the snapshot for the given key; returns an empty snapshot if absent or unreadable. */
+    public Snapshot load(String hostUrl, String token, String sourceKey) {
+        Path file = fileFor(hostUrl, token, sourceKey);
+        if (!Files.isRegularFile(file)) return Snapshot.EMPTY;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("User snapshot too large: " + size + " bytes");
+            ByteBuffer buf = ByteBuffer.allocate((int) size);
+            while (buf.hasRemaining() && ch.read(buf) >= 0) {
+                // read the whole file; a concurrent writer only ever replaces it
+            }
+            buf.flip();
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                log.info("Ignoring incompatible user snapshot {}", file);
+                return Snapshot.EMPTY;
+            }
+            long generation = buf.getLong();
+            long fetchedAt = buf.getLong();
+            int count = buf.getInt();
+            GitLabRoster.Builder users = new GitLabRoster.Builder(count);
+            byte[] scratch = new byte[NULL_LENGTH];
+            for (int i = 0; i < count; i++) {
+                long id = buf.getLong();
+                String username = readString(buf, scratch);
+                String name = readString(buf, scratch);
+                String avatarUrl = readString(buf, scratch);
+                String state = readString(buf, scratch);
+                int flags = buf.get();
+                if (username == null) throw new IllegalArgumentException("Snapshot record without username");
+                users.add(id, username, name, avatarUrl, state, (flags & FLAG_BOT) != 0);
+            }
+            return new Snapshot(users.build(), generation, fetchedAt);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException ex) {
+            log.warn("Failed to read user snapshot {}", file, ex);
+            return Snapshot.EMPTY;
+        }
+    }
+
+    /**
+     * Writes the snapshot for the given key under the next generation, replacing any previous file atomically.
+     * Returns the generation written, or 0 if writing failed. Call it while holding the key's {@link RefreshLock}.
+     */
+    public long save(String hostUrl, String token, String sourceKey, GitLabRoster users, long fetchedAtEpochSec) {
+        Path file = fileFor(hostUrl, token, sourceKey);
+        long generation = readHeader(hostUrl, token, sourceKey).generation() + 1;
+        try {
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(generation);
+                out.writeLong(fetchedAtEpochSec);
+                out.writeInt(users.size());
+                for (int i = 0; i < users.size(); i++) {
+                    out.writeLong(users.id(i));
+                    writeString(out, users.username(i));
+                    writeString(out, users.name(i));
+                    writeString(out, users.avatarUrl(i));
+                    writeString(out, users.state(i));
+                    out.writeByte(users.isBot(i) ? FLAG_BOT : 0);
+                }
+            } catch (IOException ex) {
+                Files.deleteIfExists(tmp);
+                throw ex;
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return generation;
+        } catch (IOException ex) {
+            log.warn("Failed to write user snapshot {}", file, ex);
+            return 0L;
+        }
+    }
+
+    /**
+     * Records that the users of an existing snapshot were confirmed unchanged at {@code fetchedAtEpochSec}, without
+     * rewriting them or bumping the generation. Call it while holding the key's {@link RefreshLock}.
+     */
+    public void touch(String hostUrl, String token, String sourceKey, long fetchedAtEpochSec) {
+        if (readHeader(hostUrl, token, sourceKey) == Header.NONE) return;
+        Path file = fileFor(hostUrl, token, sourceKey);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocate(Long.BYTES).putLong(0, fetchedAtEpochSec);
+            while (buf.hasRemaining()) ch.write(buf, FETCHED_AT_OFFSET + buf.position());
+        } catch (IOException ex) {
+            log.debug("Failed to update user snapshot {}", file, ex);
+        }
+    }
+
+    /**
+     * Takes the refresh lock for the given key without waiting. Returns null while another process (or another
+     * refresh in this one) holds it, and {@link RefreshLock#NONE} if the lock file cannot be opened.
+     */
+    public RefreshLock tryLock(String hostUrl, String token, String sourceKey) {
+        Path data = fileFor(hostUrl, token, sourceKey);
+        Path file = data.resolveSibling(data.getFileName().toString().replace(".bin", ".lock"));
+        FileChannel ch = null;
+        try {
+            Files.createDirectories(dir);
+            ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock = ch.tryLock();
+            if (lock != null) return new RefreshLock(ch, lock);
+            ch.close();
+            return null;
+        } catch (OverlappingFileLockException ex) {
+            closeQuietly(ch);
+            return null;
+        } catch (IOException ex) {
+            closeQuietly(ch);
+            log.warn("Cannot lock user snapshot {}; refreshing without coordination", file, ex);
+            return RefreshLock.NONE;
+        }
+    }
+
+    private static void closeQuietly(FileChannel ch) {
+        if (ch == null) return;
+        try {
+            ch.close();
+        } catch (IOException ignored) {
+            // nothing left to release
+        }
+    }
+
+    /** Reads a u16-length-prefixed UTF-8 string; {@code scratch} must hold at least 0xFFFF bytes. */
+    private static String readString(ByteBuffer buf, byte[] scratch) {
+        int len = Short.toUnsignedInt(buf.getShort());
+        if (len == NULL_LENGTH) return null;
+        buf.get(scratch, 0, len);
+        return new String(scratch, 0, len, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeShort(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        int len = Math.min(bytes.length, NULL_LENGTH - 1);
+        out.writeShort(len);
+        out.write(bytes, 0, len);
+    }
+
+    private Path fileFor(String hostUrl, String token, String sourceKey) {
+        String key = (hostUrl == null ? "" : hostUrl.trim()) + '\n' + sha256Hex(token == null ? "" : token.trim())
+                + '\n' + (sourceKey == null ? "" : sourceKey.trim());
+        return dir.resolve("users-" + sha256Hex(key).substring(0, 16) + ".bin");
+    }
+
+    private static String sha256Hex(String s) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
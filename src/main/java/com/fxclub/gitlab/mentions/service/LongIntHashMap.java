@@ -0,0 +1,86 @@
+package com.fxclub.gitlab.mentions.service;
+
+import java.util.Arrays;
+
+/**
+ * Minimal open-addressing {@code long -> int} map with linear probing, used to merge rosters by user id without
+ * boxing. Key {@code 0} is reserved as the empty marker and is tracked separately. Not thread-safe.
+ */
+final class LongIntHashMap {
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private boolean hasZero;
+    private int zeroValue;
+    private final int missing;
+
+    /** @param missing value returned by {@link #get} for absent keys */
+    LongIntHashMap(int expected, int missing) {
+        int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        this.missing = missing;
+    }
+
+    int get(long key) {
+        if (key == 0L) return hasZero ? zeroValue : missing;
+        int slot = slot(key, mask);
+        while (true) {
+            long k = keys[slot];
+            if (k == 0L) return missing;
+            if (k == key) return values[slot];
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    void put(long key, int value) {
+        if (key == 0L) {
+            if (!hasZero) size++;
+            hasZero = true;
+            zeroValue = value;
+            return;
+        }
+        int slot = slot(key, mask);
+        while (keys[slot] != 0L) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > keys.length) grow();
+    }
+
+    int size() { return size; }
+
+    void clear() {
+        Arrays.fill(keys, 0L);
+        size = 0;
+        hasZero = false;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long k = oldKeys[i];
+            if (k == 0L) continue;
+            int slot = slot(k, mask);
+            while (keys[slot] != 0L) slot = (slot + 1) & mask;
+            keys[slot] = k;
+            values[slot] = oldValues[i];
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,192 @@
+package com.fxclub.gitlab.mentions.service;
+
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.components.StoragePathMacros;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongToIntFunction;
+
+/**
+ * Per-project record of accepted mentions, used to lift frequently and recently mentioned users in the ranking.
+ * <p>
+ * Each user id maps to a single exponentially decaying score kept in the log domain: {@code ln(score) + t / tau}.
+ * Adding a mention at time {@code t} is then one log-add-exp, and comparing users needs no per-entry decay pass.
+ * Entries live in a primitive open-addressing table written only by the insert handler on the EDT and read without
+ * locks by completion threads. The table holds at most {@link #MAX_ENTRIES} users: when it is full, the next resize
+ * drops the weakest scores instead of growing. Nothing is written to disk per mention; the IDE persists
+ * {@link #getState()} with its regular, batched settings saves.
+ */
+@Service(Service.Level.PROJECT)
+@State(name = "GitLabMentionsFrecency", storages = @Storage(StoragePathMacros.WORKSPACE_FILE))
+public final class MentionFrecencyStore implements PersistentStateComponent<MentionFrecencyStore.Persisted> {
+    /** Scores halve every two weeks. */
+    private static final double TAU_SECONDS = 14 * 24 * 3600 / Math.log(2);
+    /** Ranking points for a decayed score s: {@code 800 * ln(1 + s)}, capped below two match tiers. */
+    public static final int MAX_BOOST = 3000;
+    private static final int MAX_ENTRIES = 512;
+    /** Entries kept when a full table is compacted, so the next compaction is a quarter of the cap away. */
+    private static final int COMPACT_TO = MAX_ENTRIES * 3 / 4;
+
+    /** Serialized form: the strongest entries, best first. */
+    public static final class Persisted {
+        public List<Mention> mentions = new ArrayList<>();
+    }
+
+    /** One user's score in the log domain. */
+    public static final class Mention {
+        public long id;
+        public double logScore;
+
+        public Mention() {
+        }
+
+        Mention(long id, double logScore) {
+            this.id = id;
+            this.logScore = logScore;
+        }
+    }
+
+    private volatile Table table = new Table(64);
+
+    public static MentionFrecencyStore getInstance(@NotNull Project project) {
+        return project.getService(MentionFrecencyStore.class);
+    }
+
+    /** Records an accepted mention. O(1) amortized; called from the insert handler on the EDT. */
+    public void recordMention(long userId) {
+        if (userId == 0L) return;
+        double now = nowTerm();
+        Table t = table;
+        int slot = t.find(userId);
+        if (slot >= 0) {
+            t.values.set(slot, Double.doubleToRawLongBits(logAddExp(Double.longBitsToDouble(t.values.get(slot)), now)));
+            return;
+        }
+        if ((t.size + 1) * 2 > t.capacity()) {
+            t = t.size >= MAX_ENTRIES ? t.strongest(COMPACT_TO) : t.grow();
+            table = t;
+        }
+        t.insert(userId, Double.doubleToRawLongBits(now));
+    }
+
+    /** Snapshot of the current boosts, for use during one completion pass. Lock-free. */
+    public LongToIntFunction boosts() {
+        Table t = table;
+        double now = nowTerm();
+        return id -> {
+            int slot = t.find(id);
+            if (slot < 0) return 0;
+            double score = Math.exp(Double.longBitsToDouble(t.values.get(slot)) - now);
+            return (int) Math.min(MAX_BOOST, 800 * Math.log1p(score));
+        };
+    }
+
+    @Override
+    public @NotNull Persisted getState() {
+        Persisted state = new Persisted();
+        state.mentions = table.sortedByScore();
+        return state;
+    }
+
+    @Override
+    public void loadState(@NotNull Persisted state) {
+        List<Mention> mentions = state.mentions == null ? List.of() : state.mentions;
+        int count = Math.min(MAX_ENTRIES, mentions.size());
+        Table t = new Table(Math.max(64, Integer.highestOneBit(Math.max(1, count)) << 2));
+        for (Mention m : mentions) {
+            if (t.size >= MAX_ENTRIES) break;
+            if (m == null || m.id == 0L || Double.isNaN(m.logScore) || t.find(m.id) >= 0) continue;
+            t.insert(m.id, Double.doubleToRawLongBits(m.logScore));
+        }
+        table = t;
+    }
+
+    private static double nowTerm() {
+        return System.currentTimeMillis() / 1000.0 / TAU_SECONDS;
+    }
+
+    /** ln(e^a + e^b) without overflow. */
+    private static double logAddExp(double a, double b) {
+        double max = Math.max(a, b);
+        return max + Math.log1p(Math.exp(Math.min(a, b) - max));
+    }
+
+    /**
+     * Open-addressing long -> long table with a single writer. Values are stored before keys so a reader that sees a
+     * key also sees its value; growth publishes a fresh table through {@link #table}.
+     */
+    private static final class Table {
+        final AtomicLongArray keys;
+        final AtomicLongArray values;
+        private final int mask;
+        int size;
+
+        Table(int capacity) {
+            keys = new AtomicLongArray(capacity);
+            values = new AtomicLongArray(capacity);
+            mask = capacity - 1;
+        }
+
+        int capacity() { return mask + 1; }
+
+        int find(long key) {
+            int slot = slot(key);
+            while (true) {
+                long k = keys.get(slot);
+                if (k == 0L) return -1;
+                if (k == key) return slot;
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        void insert(long key, long valueBits) {
+            int slot = slot(key);
+            while (keys.get(slot) != 0L) slot = (slot + 1) & mask;
+            values.set(slot, valueBits);
+            keys.set(slot, key);
+            size++;
+        }
+
+        Table grow() {
+            Table bigger = new Table(capacity() * 2);
+            for (int i = 0; i < capacity(); i++) {
+                long key = keys.get(i);
+                if (key != 0L) bigger.insert(key, values.get(i));
+            }
+            return bigger;
+        }
+
+        /** A table of the same capacity with only the {@code count} strongest entries. */
+        Table strongest(int count) {
+            Table kept = new Table(capacity());
+            List<Mention> sorted = sortedByScore();
+            for (int i = 0; i < Math.min(count, sorted.size()); i++) {
+                kept.insert(sorted.get(i).id, Double.doubleToRawLongBits(sorted.get(i).logScore));
+            }
+            return kept;
+        }
+
+        /** Every entry, strongest first; comparing log-domain values needs no decay. */
+        List<Mention> sortedByScore() {
+            List<Mention> live = new ArrayList<>(size);
+            for (int i = 0; i < capacity(); i++) {
+                long key = keys.get(i);
+                if (key != 0L) live.add(new Mention(key, Double.longBitsToDouble(values.get(i))));
+            }
+            live.sort((a, b) -> Double.compare(b.logScore, a.logScore));
+            return live;
+        }
+
+        private int slot(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
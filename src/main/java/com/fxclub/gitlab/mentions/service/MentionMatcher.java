@@ -0,0 +1,148 @@
+package com.fxclub.gitlab.mentions.service;
+
+/**
+ * Allocation-free relevance scoring of a mention query against pre-lowered username / name arrays.
+ * <p>
+ * Tiers, best first: exact match, prefix, prefix of an inner word, plain substring, and finally a subsequence whose
+ * first character starts a word ("jsm" for "John Smith"). Within a tier shorter candidates and earlier hits win;
+ * subsequence hits on word starts and consecutive characters score higher than scattered ones.
+ */
+public final class MentionMatcher {
+    public static final int NO_MATCH = Integer.MIN_VALUE;
+
+    private static final int EXACT = 10_000;
+    private static final int PREFIX = 9_000;
+    private static final int WORD_PREFIX = 7_000;
+    private static final int SUBSTRING = 5_000;
+    private static final int FUZZY = 1_000;
+
+    /** Upper bound of scores for hits that are neither a prefix nor a word prefix. */
+    static final int MAX_SUBSTRING_SCORE = SUBSTRING - 1;
+    /** Upper bound of scores for subsequence-only hits. */
+    static final int MAX_FUZZY_SCORE = SUBSTRING - 1000;
+
+    private MentionMatcher() {}
+
+    /**
+     * Scores {@code query} against a lower-cased haystack.
+     *
+     * @param starts word-start bitmask of the first 64 characters, see {@link #wordStarts(String)}
+     * @return a positive score, or {@link #NO_MATCH}
+     */
+    public static int score(char[] hay, long starts, String query) {
+        return score(hay, 0, hay.length, starts, query);
+    }
+
+    /** As {@link #score(char[], long, String)} for the slice {@code [from, to)} of a shared character arena. */
+    public static int score(char[] arena, int from, int to, long starts, String query) {
+        int len = to - from;
+        int qlen = query.length();
+        if (qlen == 0) return PREFIX;
+        if (qlen > len) return NO_MATCH;
+        int at = indexOf(arena, from, len, query);
+        if (at == 0) return qlen == len ? EXACT : PREFIX - Math.min(len - qlen, 255);
+        if (at > 0) return (isWordStart(arena, from, starts, at) ? WORD_PREFIX : SUBSTRING) - Math.min(at, 255);
+        return subsequence(arena, from, len, starts, query);
+    }
+
+    /** Convenience overload for callers holding plain strings (e.g. the completion prefix matcher). */
+    public static int score(String text, String query) {
+        if (text == null || text.isEmpty()) return NO_MATCH;
+        char[] hay = text.toCharArray();
+        for (int i = 0; i < hay.length; i++) hay[i] = lower(hay[i]);
+        return score(hay, wordStarts(text), query);
+    }
+
+    /**
+     * Greedy word-aware subsequence match: stays on consecutive characters, else jumps to the next word start.
+     * Positions are relative to {@code base}.
+     */
+    private static int subsequence(char[] hay, int base, int len, long starts, String query) {
+        int last = nextWordStart(hay, base, len, starts, 0, lower(query.charAt(0)));
+        if (last < 0) return NO_MATCH;
+        int score = FUZZY + 50;
+        for (int qi = 1; qi < query.length(); qi++) {
+            char c = lower(query.charAt(qi));
+            if (last + 1 < len && hay[base + last + 1] == c) {
+                last++;
+                score += 20;
+                continue;
+            }
+            int ws = nextWordStart(hay, base, len, starts, last + 1, c);
+            if (ws >= 0) {
+                score += 50 - Math.min(40, ws - last);
+                last = ws;
+                continue;
+            }
+            int any = indexOfChar(hay, base, len, c, last + 1);
+            if (any < 0) return NO_MATCH;
+            score -= Math.min(30, any - last);
+            last = any;
+        }
+        return Math.max(1, Math.min(MAX_FUZZY_SCORE, score));
+    }
+
+    /**
+     * Word starts of the original (not lower-cased) string: the first character, any letter or digit after a
+     * separator, and camel humps. Only the first 64 positions are recorded; later ones are derived from separators.
+     */
+    public static long wordStarts(String s) {
+        if (s == null) return 0L;
+        long bits = 0L;
+        int n = Math.min(64, s.length());
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (!Character.isLetterOrDigit(c)) continue;
+            char prev = i == 0 ? ' ' : s.charAt(i - 1);
+            if (i == 0 || !Character.isLetterOrDigit(prev) || (Character.isUpperCase(c) && Character.isLowerCase(prev))) {
+                bits |= 1L << i;
+            }
+        }
+        return bits;
+    }
+
+    private static boolean isWordStart(char[] hay, int base, long starts, int i) {
+        if (i < 64) return (starts & (1L << i)) != 0;
+        return Character.isLetterOrDigit(hay[base + i]) && !Character.isLetterOrDigit(hay[base + i - 1]);
+    }
+
+    private static int nextWordStart(char[] hay, int base, int len, long starts, int from, char c) {
+        for (int i = from; i < len; i++) {
+            if (hay[base + i] == c && isWordStart(hay, base, starts, i)) return i;
+        }
+        return -1;
+    }
+
+    private static int indexOfChar(char[] hay, int base, int len, char c, int from) {
+        for (int i = from; i < len; i++) {
+            if (hay[base + i] == c) return i;
+        }
+        return -1;
+    }
+
+    /** Case-insensitive indexOf of {@code query} in an already lower-cased array. */
+    static int indexOf(char[] haystack, String query) {
+        return indexOf(haystack, 0, haystack.length, query);
+    }
+
+    /** As {@link #indexOf(char[], String)} within {@code [base, base + len)}; the result is relative to base. */
+    static int indexOf(char[] haystack, int base, int len, String query) {
+        int qlen = query.length();
+        if (qlen == 0) return 0;
+        int last = len - qlen;
+        char first = lower(query.charAt(0));
+        outer:
+        for (int i = 0; i <= last; i++) {
+            if (haystack[base + i] != first) continue;
+            for (int j = 1; j < qlen; j++) {
+                if (haystack[base + i + j] != lower(query.charAt(j))) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    static char lower(char c) {
+        return c < 128 ? (c >= 'A' && c <= 'Z' ? (char) (c + 32) : c) : Character.toLowerCase(c);
+    }
+}
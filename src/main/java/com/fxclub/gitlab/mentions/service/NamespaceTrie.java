@@ -0,0 +1,149 @@
+package com.fxclub.gitlab.mentions.service;
+
+import com.fxclub.gitlab.mentions.model.GitLabGroup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable trie of group paths with one node per path segment, for completing {@code @org/team/subteam} one segment
+ * at a time. Every segment but the last must match exactly (ignoring case) and the last one is matched as a prefix
+ * among the children, which are kept sorted; a lookup therefore costs time proportional to the typed prefix plus a
+ * binary search and the returned results, independent of how many groups there are.
+ */
+final class NamespaceTrie {
+    static final NamespaceTrie EMPTY = new NamespaceTrie(new Node(null, null, null), 0);
+
+    private static final String[] NO_KEYS = new String[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private static final class Node {
+        final String fullPath;
+        /** Null for parent namespaces that are only known from their subgroups' paths. */
+        final GitLabGroup group;
+        String[] keys = NO_KEYS;
+        Node[] children = NO_CHILDREN;
+        /** Mutable children while building; dropped by {@link #freeze()}. */
+        TreeMap<String, Node> building;
+
+        Node(String fullPath, GitLabGroup group, TreeMap<String, Node> building) {
+            this.fullPath = fullPath;
+            this.group = group;
+            this.building = building;
+        }
+
+        Node child(String key) {
+            int i = Arrays.binarySearch(keys, key);
+            return i < 0 ? null : children[i];
+        }
+
+        GitLabGroup asGroup() {
+            return group != null ? group : new GitLabGroup(0L, fullPath, null);
+        }
+
+        void freeze() {
+            if (building == null) return;
+            keys = building.keySet().toArray(NO_KEYS);
+            children = building.values().toArray(NO_CHILDREN);
+            building = null;
+            for (Node child : children) child.freeze();
+        }
+    }
+
+    private final Node root;
+    private final int size;
+
+    private NamespaceTrie(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /** Builds the trie from several group lists; a path listed more than once keeps its first entry. */
+    static NamespaceTrie of(Collection<List<GitLabGroup>> groupLists) {
+        Node root = new Node(null, null, new TreeMap<>());
+        int size = 0;
+        for (List<GitLabGroup> groups : groupLists) {
+            for (GitLabGroup group : groups) {
+                if (group.fullPath() == null || group.fullPath().isBlank()) continue;
+                if (insert(root, group)) size++;
+            }
+        }
+        if (size == 0) return EMPTY;
+        root.freeze();
+        return new NamespaceTrie(root, size);
+    }
+
+    private static boolean insert(Node root, GitLabGroup group) {
+        String path = group.fullPath();
+        Node node = root;
+        int start = 0;
+        while (true) {
+            int slash = path.indexOf('/', start);
+            int end = slash < 0 ? path.length() : slash;
+            String key = path.substring(start, end).toLowerCase(Locale.ROOT);
+            Map<String, Node> children = node.building;
+            Node next = children.get(key);
+            if (slash < 0) {
+                if (next != null && next.group != null) return false;
+                Node leaf = new Node(path, group, next == null ? new TreeMap<>() : next.building);
+                children.put(key, leaf);
+                return true;
+            }
+            if (next == null) {
+                next = new Node(path.substring(0, end), null, new TreeMap<>());
+                children.put(key, next);
+            }
+            node = next;
+            start = slash + 1;
+        }
+    }
+
+    int size() { return size; }
+
+    /** True if {@code fullPath} (ignoring case) is a cached group or the parent namespace of one. */
+    boolean contains(String fullPath) {
+        if (size == 0 || fullPath.isEmpty()) return false;
+        Node node = root;
+        int start = 0;
+        while (node != null) {
+            int slash = fullPath.indexOf('/', start);
+            int end = slash < 0 ? fullPath.length() : slash;
+            node = node.child(fullPath.substring(start, end).toLowerCase(Locale.ROOT));
+            if (slash < 0) return node != null;
+            start = slash + 1;
+        }
+        return false;
+    }
+
+    boolean isEmpty() { return size == 0; }
+
+    /**
+     * Up to {@code limit} namespaces that complete {@code prefix}, in path order: for {@code org/te}, the children
+     * of {@code org} whose path starts with {@code te}; for {@code org/}, all children of {@code org}.
+     */
+    List<GitLabGroup> complete(String prefix, int limit) {
+        if (size == 0 || limit <= 0) return Collections.emptyList();
+        Node node = root;
+        int start = 0;
+        int slash;
+        while ((slash = prefix.indexOf('/', start)) >= 0) {
+            node = node.child(prefix.substring(start, slash).toLowerCase(Locale.ROOT));
+            if (node == null) return Collections.emptyList();
+            start = slash + 1;
+        }
+        String last = prefix.substring(start).toLowerCase(Locale.ROOT);
+        int from = Arrays.binarySearch(node.keys, last);
+        if (from < 0) from = -from - 1;
+        List<GitLabGroup> out = new ArrayList<>(Math.min(limit, node.keys.length - from));
+        for (int i = from; i < node.keys.length && out.size() < limit && node.keys[i].startsWith(last); i++) {
+            out.add(node.children[i].asGroup());
+        }
+        return out;
+    }
+}
@@ -0,0 +1,238 @@
+package com.fxclub.gitlab.mentions.service;
+
+import com.fxclub.gitlab.mentions.api.GitLabApiClient;
+import com.fxclub.gitlab.mentions.settings.GitLabSettingsState;
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.components.Service;
+import com.intellij.psi.PsiFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resolves owner handles that the cached roster does not know, e.g. users outside the configured sources and
+ * groups. {@link #resolve} never does I/O: it answers from memory, including the group trees the user service has
+ * cached, or queues the handle. Lookups use the user service's client, so they share its cache and request limits.
+ * A single background worker serves the queue in batches at a bounded request rate and then re-highlights the files
+ * that asked, which see the answers on their next pass. Answers are kept for a while in a bounded LRU; failed
+ * lookups are retried after a shorter pause. {@link #stamp} tells callers which of their cached answers changed.
+ */
+@Service(Service.Level.APP)
+@Slf4j
+public final class OwnerHandleResolver implements Disposable {
+    public enum Status { ACTIVE_USER, INACTIVE_USER, GROUP, UNKNOWN }
+
+    /** @param state account state for {@link Status#INACTIVE_USER}, e.g. "blocked" */
+    public record Resolution(Status status, String state) {}
+
+    private static final int BATCH_SIZE = 10;
+    private static final int MAX_PENDING = 512;
+    private static final int MAX_RESOLVED = 4096;
+    private static final int MAX_REQUESTS_PER_SECOND = 5;
+    private static final long RESOLVED_TTL_MS = TimeUnit.MINUTES.toMillis(30);
+    private static final long FAILED_RETRY_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final Resolution CACHED_GROUP = new Resolution(Status.GROUP, null);
+
+    /** A resolution, or null for a failed lookup, with the time it was made and a number unique to it. */
+    private record Entry(Resolution resolution, long atMs, long stamp) {}
+
+    private final ExecutorService worker = AppExecutorUtil.createBoundedApplicationPoolExecutor("GitLab Owners", 1);
+    /** Keyed by lower-cased handle without '@', for {@link #host}, least recently used first. */
+    private final LinkedHashMap<String, Entry> resolved = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_RESOLVED;
+        }
+    };
+    /** Handles waiting for the worker, oldest first, with the files to re-highlight once they are resolved. */
+    private final LinkedHashMap<String, Set<PsiFile>> pending = new LinkedHashMap<>();
+    /** Handles taken by the worker and not finished yet; later requests only add their file here. */
+    private final Map<String, Set<PsiFile>> loading = new HashMap<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicLong stamps = new AtomicLong();
+    private volatile String host = "";
+    private volatile boolean disposed = false;
+
+    public static OwnerHandleResolver getInstance() {
+        return ApplicationManager.getApplication().getService(OwnerHandleResolver.class);
+    }
+
+    /**
+     * A number that changes whenever the answer {@link #resolve} gives for {@code handle} may change: when a lookup
+     * records a new answer, when the answer expires and when it is dropped. 0 while nothing is known.
+     */
+    public long stamp(String handle) {
+        Entry entry;
+        synchronized (resolved) {
+            entry = resolved.get(handle.toLowerCase(Locale.ROOT));
+        }
+        if (entry == null) return 0;
+        return isFresh(entry, System.currentTimeMillis()) ? entry.stamp() : -entry.stamp();
+    }
+
+    private static GitLabUserService users() {
+        return ApplicationManager.getApplication().getService(GitLabUserService.class);
+    }
+
+    /**
+     * The known answer for {@code handle} (without '@'), or null while it is being resolved or could not be. In that
+     * case the handle is queued unless no token is configured, and {@code requester} is re-highlighted once it is done.
+     */
+    public Resolution resolve(String handle, PsiFile requester) {
+        GitLabSettingsState settings = GitLabSettingsState.getInstance();
+        checkHost(settings);
+        // Users and top-level groups share one namespace, so a cached group path cannot be a username
+        if (users().isCachedGroup(handle)) return CACHED_GROUP;
+        String key = handle.toLowerCase(Locale.ROOT);
+        Entry entry;
+        synchronized (resolved) {
+            entry = resolved.get(key);
+        }
+        if (entry != null && isFresh(entry, System.currentTimeMillis())) return entry.resolution();
+        if (settings.privateToken == null || settings.privateToken.isBlank() || disposed) {
+            return entry == null ? null : entry.resolution();
+        }
+        synchronized (pending) {
+            Set<PsiFile> inFlight = loading.get(key);
+            if (inFlight != null) {
+                if (requester != null) inFlight.add(requester);
+                return entry == null ? null : entry.resolution();
+            }
+            Set<PsiFile> waiters = pending.computeIfAbsent(key, k -> Collections.newSetFromMap(new WeakHashMap<>()));
+            if (requester != null) waiters.add(requester);
+            Iterator<String> eldest = pending.keySet().iterator();
+            while (pending.size() > MAX_PENDING) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        if (draining.compareAndSet(false, true)) worker.execute(this::drain);
+        // A stale answer is still better than none while the refresh is queued
+        return entry == null ? null : entry.resolution();
+    }
+
+    public void clear() {
+        synchronized (resolved) {
+            resolved.clear();
+        }
+    }
+
+    private static boolean isFresh(Entry entry, long now) {
+        long ttl = entry.resolution() == null ? FAILED_RETRY_MS : RESOLVED_TTL_MS;
+        return now - entry.atMs() < ttl;
+    }
+
+    private void checkHost(GitLabSettingsState settings) {
+        String current = settings.hostUrl == null ? "" : settings.hostUrl.trim();
+        if (current.equals(host)) return;
+        host = current;
+        clear();
+    }
+
+    /** Serves the queue batch by batch, pacing requests to {@link #MAX_REQUESTS_PER_SECOND}. */
+    private void drain() {
+        try {
+            while (!disposed) {
+                List<String> batch = takeBatch();
+                if (batch.isEmpty()) return;
+                long startedNanos = System.nanoTime();
+                int requests = 0;
+                Set<PsiFile> waiters = Collections.newSetFromMap(new WeakHashMap<>());
+                for (String handle : batch) {
+                    if (disposed) return;
+                    requests += lookup(handle);
+                    synchronized (pending) {
+                        Set<PsiFile> registered = loading.remove(handle);
+                        if (registered != null) waiters.addAll(registered);
+                    }
+                }
+                rehighlight(waiters);
+                long budgetNanos = TimeUnit.SECONDS.toNanos(requests) / MAX_REQUESTS_PER_SECOND;
+                long sleepNanos = budgetNanos - (System.nanoTime() - startedNanos);
+                if (sleepNanos > 0) TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            draining.set(false);
+            boolean more;
+            synchronized (pending) {
+                more = !pending.isEmpty();
+            }
+            if (more && !disposed && draining.compareAndSet(false, true)) worker.execute(this::drain);
+        }
+    }
+
+    /** Moves up to {@link #BATCH_SIZE} handles from the queue to {@link #loading}. */
+    private List<String> takeBatch() {
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+        synchronized (pending) {
+            Iterator<Map.Entry<String, Set<PsiFile>>> it = pending.entrySet().iterator();
+            while (batch.size() < BATCH_SIZE && it.hasNext()) {
+                Map.Entry<String, Set<PsiFile>> next = it.next();
+                loading.put(next.getKey(), next.getValue());
+                batch.add(next.getKey());
+                it.remove();
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Resolves one handle and records the answer; returns the number of requests made. A handle without '/' is
+     * tried as a username first, then as a top-level group.
+     */
+    private int lookup(String handle) {
+        GitLabApiClient apiClient = users().getApiClient();
+        int requests = 0;
+        Resolution resolution;
+        GitLabApiClient.OwnerLookup user = null;
+        if (handle.indexOf('/') < 0) {
+            user = apiClient.lookupUser(handle);
+            requests++;
+        }
+        if (user != null && user.found()) {
+            boolean active = user.state() == null || "active".equals(user.state());
+            resolution = new Resolution(active ? Status.ACTIVE_USER : Status.INACTIVE_USER, user.state());
+        } else if (user == null && handle.indexOf('/') < 0) {
+            resolution = null; // the user lookup failed; do not guess
+        } else {
+            GitLabApiClient.OwnerLookup group = apiClient.lookupGroup(handle);
+            requests++;
+            resolution = group == null ? null : new Resolution(group.found() ? Status.GROUP : Status.UNKNOWN, null);
+        }
+        Entry entry = new Entry(resolution, System.currentTimeMillis(), stamps.incrementAndGet());
+        synchronized (resolved) {
+            resolved.put(handle, entry);
+        }
+        return requests;
+    }
+
+    private static void rehighlight(Set<PsiFile> files) {
+        if (files.isEmpty()) return;
+        List<PsiFile> targets = new ArrayList<>(files);
+        ApplicationManager.getApplication().invokeLater(() -> {
+            for (PsiFile file : targets) {
+                if (file.isValid()) DaemonCodeAnalyzer.getInstance(file.getProject()).restart(file);
+            }
+        }, ModalityState.nonModal());
+    }
+
+    @Override
+    public void dispose() {
+        disposed = true;
+        synchronized (pending) {
+            pending.clear();
+            loading.clear();
+        }
+        worker.shutdownNow();
+    }
+}
@@ -0,0 +1,14 @@
+package com.fxclub.gitlab.mentions.service;
+
+import com.intellij.openapi.application.ApplicationActivationListener;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.wm.IdeFrame;
+import org.jetbrains.annotations.NotNull;
+
+/** Resumes roster prefetching when the IDE window gains focus, including the first activation after startup. */
+public class PrefetchActivationListener implements ApplicationActivationListener {
+    @Override
+    public void applicationActivated(@NotNull IdeFrame ideFrame) {
+        ApplicationManager.getApplication().getService(GitLabUserService.class).ensurePrefetchScheduled();
+    }
+}
@@ -0,0 +1,205 @@
+package com.fxclub.gitlab.mentions.service;
+
+import com.fxclub.gitlab.mentions.api.GitLabApiClient;
+import com.fxclub.gitlab.mentions.metrics.GitLabMetrics;
+import com.fxclub.gitlab.mentions.model.GitLabUser;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Server-side user search for prefixes the cached roster cannot answer, via GitLab's /users?search=.
+ * <p>
+ * Nothing here blocks: completion reads answers with {@link #cached} and starts a search with {@link #searchAsync},
+ * which runs on a scheduled executor and completes once the answer is cached. A search is only sent after a short
+ * quiet period, and a newer prefix for the same host drops the search still waiting for it, so typing a word costs
+ * one request rather than one per keystroke. Answers are kept in a small LRU keyed by prefix; a complete answer for
+ * a shorter prefix (fewer results than asked for) also answers every longer one by filtering locally. Concurrent
+ * requests are bounded per host.
+ */
+@Slf4j
+final class RemoteUserSearch {
+    private static final long DEBOUNCE_MS = 250;
+    private static final long PERMIT_RETRY_MS = 25;
+    private static final int MAX_CACHED_PREFIXES = 64;
+    private static final long CACHE_TTL_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final int MAX_REQUESTS_PER_HOST = 2;
+
+    /** @param complete true if the server returned every match, so longer prefixes can be filtered from it */
+    private record Answer(List<GitLabUser> users, boolean complete, long atMs) {}
+
+    /** A search that was started and not answered yet; {@code result} is cancelled to drop it. */
+    private record Search(String host, String key, String query, int limit, CompletableFuture<List<GitLabUser>> result) {}
+
+    private final GitLabApiClient apiClient;
+    private final ScheduledExecutorService executor;
+    private final long debounceMs;
+    private final LongSupplier clock;
+    /** Keyed by host and lower-cased prefix, least recently used first. */
+    private final LinkedHashMap<String, Answer> answers = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Answer> eldest) {
+            return size() > MAX_CACHED_PREFIXES;
+        }
+    };
+    /** Searches started and not answered yet, keyed like {@link #answers}; guarded by {@link #answers}. */
+    private final Map<String, Search> running = new HashMap<>();
+    /** Per host, the search still in its quiet period or waiting for a permit; guarded by {@link #answers}. */
+    private final Map<String, Search> waiting = new HashMap<>();
+    private final Map<String, Semaphore> permitsByHost = new ConcurrentHashMap<>();
+
+    RemoteUserSearch(GitLabApiClient apiClient) {
+        this(apiClient, AppExecutorUtil.getAppScheduledExecutorService(), DEBOUNCE_MS, System::currentTimeMillis);
+    }
+
+    /** For tests: the executor searches run on, a different quiet period, and the clock answers expire by. */
+    RemoteUserSearch(GitLabApiClient apiClient, ScheduledExecutorService executor, long debounceMs, LongSupplier clock) {
+        this.apiClient = apiClient;
+        this.executor = executor;
+        this.debounceMs = debounceMs;
+        this.clock = clock;
+    }
+
+    /** Up to {@code limit} users matching {@code query} on {@code host} from earlier answers, or null if none applies. */
+    List<GitLabUser> cached(String host, String query, int limit) {
+        List<GitLabUser> cached = cachedPrefix(host, query.toLowerCase(Locale.ROOT), limit);
+        if (cached != null) GitLabMetrics.SERVER_SEARCH_CACHE_HITS.increment();
+        return cached;
+    }
+
+    /**
+     * Searches {@code host} for up to {@code limit} users matching {@code query}. The future completes once the
+     * answer is cached, with an empty list if the search failed, and is cancelled if a newer prefix replaced it
+     * during its quiet period. Callers asking for a prefix that is already being searched share one future.
+     */
+    CompletableFuture<List<GitLabUser>> searchAsync(String host, String query, int limit) {
+        String prefix = query.toLowerCase(Locale.ROOT);
+        List<GitLabUser> cached = cached(host, query, limit);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+        String key = key(host, prefix);
+        Search search;
+        synchronized (answers) {
+            Search started = running.get(key);
+            if (started != null) return started.result();
+            Search superseded = waiting.remove(host);
+            if (superseded != null && superseded.result().cancel(false)) {
+                GitLabMetrics.SERVER_SEARCHES_CANCELLED.increment();
+            }
+            search = new Search(host, key, query, limit, new CompletableFuture<>());
+            running.put(key, search);
+            waiting.put(host, search);
+        }
+        search.result().whenComplete((users, error) -> {
+            synchronized (answers) {
+                running.remove(key, search);
+                waiting.remove(host, search);
+            }
+        });
+        executor.schedule(() -> send(search), debounceMs, TimeUnit.MILLISECONDS);
+        return search.result();
+    }
+
+    /** Drops every cached answer and every search that has not been answered yet. */
+    void clear() {
+        List<Search> started;
+        synchronized (answers) {
+            answers.clear();
+            started = new ArrayList<>(running.values());
+        }
+        for (Search search : started) search.result().cancel(false);
+    }
+
+    /** Sends {@code search} once a permit for its host is free; comes back later instead of waiting for one. */
+    private void send(Search search) {
+        if (search.result().isDone()) return;
+        Semaphore permits = permitsByHost.computeIfAbsent(search.host(), h -> new Semaphore(MAX_REQUESTS_PER_HOST));
+        if (!permits.tryAcquire()) {
+            executor.schedule(() -> send(search), PERMIT_RETRY_MS, TimeUnit.MILLISECONDS);
+            return;
+        }
+        synchronized (answers) {
+            // Still replaceable until now; past this point the request goes out and its answer is kept
+            if (search.result().isDone()) {
+                permits.release();
+                return;
+            }
+            waiting.remove(search.host(), search);
+        }
+        // Another search may have answered this prefix while this one waited
+        List<GitLabUser> cached = cached(search.host(), search.query(), search.limit());
+        if (cached != null) {
+            permits.release();
+            search.result().complete(cached);
+            return;
+        }
+        GitLabMetrics.SERVER_SEARCH_REQUESTS.increment();
+        long startedNanos = System.nanoTime();
+        CompletableFuture<List<GitLabUser>> request;
+        try {
+            request = apiClient.searchUsersAsync(search.query(), search.limit());
+        } catch (RuntimeException ex) {
+            permits.release();
+            log.warn("GitLab user search failed: {}", ex.toString());
+            search.result().complete(List.of());
+            return;
+        }
+        request.whenComplete((users, error) -> {
+            permits.release();
+            GitLabMetrics.SERVER_SEARCH.recordSince(startedNanos);
+            if (error != null || users == null) {
+                if (!request.isCancelled()) log.warn("GitLab user search failed: {}", String.valueOf(error));
+                search.result().complete(List.of());
+                return;
+            }
+            synchronized (answers) {
+                answers.put(search.key(), new Answer(List.copyOf(users), users.size() < search.limit(), clock.getAsLong()));
+            }
+            search.result().complete(users);
+        });
+        // Dropped by clear(): abort the exchange too
+        search.result().whenComplete((users, error) -> {
+            if (search.result().isCancelled()) request.cancel(true);
+        });
+    }
+
+    /** The answer for {@code prefix} from the cache, or null if neither it nor a complete shorter prefix is cached. */
+    private List<GitLabUser> cachedPrefix(String host, String prefix, int limit) {
+        long now = clock.getAsLong();
+        synchronized (answers) {
+            Answer exact = answers.get(key(host, prefix));
+            if (exact != null && now - exact.atMs() < CACHE_TTL_MS) return exact.users();
+            for (int len = prefix.length() - 1; len > 0; len--) {
+                Answer shorter = answers.get(key(host, prefix.substring(0, len)));
+                if (shorter == null || !shorter.complete() || now - shorter.atMs() >= CACHE_TTL_MS) continue;
+                // GitLab matches by substring, so every match of the longer prefix is among these users
+                List<GitLabUser> out = new ArrayList<>();
+                for (GitLabUser u : shorter.users()) {
+                    if (out.size() >= limit) break;
+                    if (contains(u.getUsername(), prefix) || contains(u.getName(), prefix)) out.add(u);
+                }
+                return out;
+            }
+        }
+        return null;
+    }
+
+    private static boolean contains(String text, String lowerQuery) {
+        return text != null && text.toLowerCase(Locale.ROOT).contains(lowerQuery);
+    }
+
+    private static String key(String host, String prefix) {
+        return host + '\n' + prefix;
+    }
+}
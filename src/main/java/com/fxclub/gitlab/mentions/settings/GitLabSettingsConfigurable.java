@@ -18,7 +18,11 @@ public class GitLabSettingsConfigurable implements Configurable {
     private JPasswordField tokenField;
     private JSpinner cacheTtlSpinner;
     private JSpinner maxUsersSpinner;
+    private JSpinner concurrencySpinner;
+    private JSpinner pageSizeSpinner;
+    private JCheckBox graphQlCheckBox;
     private JTextField groupIdField; // new field
+    private JTextField sourcesField;
 
     private GitLabSettingsState state;
 
@@ -56,6 +60,13 @@ public class GitLabSettingsConfigurable implements Configurable {
             gbc.gridx = 1; gbc.fill = GridBagConstraints.NONE; gbc.weightx = 0;
             panel.add(groupIdField, gbc);
 
+            gbc.gridx = 0; gbc.gridy++; gbc.fill = GridBagConstraints.NONE; gbc.weightx = 0;
+            panel.add(new JLabel("Sources (optional):"), gbc);
+            sourcesField = new JTextField(state.sources == null ? "" : state.sources, 30);
+            sourcesField.setToolTipText("Comma-separated: group:<id>, project:<id>, users; append @<seconds> for a per-source TTL");
+            gbc.gridx = 1; gbc.fill = GridBagConstraints.HORIZONTAL; gbc.weightx = 1.0;
+            panel.add(sourcesField, gbc);
+
             gbc.gridx = 0; gbc.gridy++; gbc.fill = GridBagConstraints.NONE; gbc.weightx = 0;
             panel.add(new JLabel("Cache TTL (s):"), gbc);
             cacheTtlSpinner = new JSpinner(new SpinnerNumberModel(state.cacheTtlSeconds, 30, 3600, 30));
@@ -68,8 +79,25 @@ public class GitLabSettingsConfigurable implements Configurable {
             gbc.gridx = 1;
             panel.add(maxUsersSpinner, gbc);
 
+            gbc.gridx = 0; gbc.gridy++; gbc.fill = GridBagConstraints.NONE;
+            panel.add(new JLabel("Parallel page requests:"), gbc);
+            concurrencySpinner = new JSpinner(new SpinnerNumberModel(Math.max(1, Math.min(16, state.maxConcurrentRequests)), 1, 16, 1));
+            gbc.gridx = 1;
+            panel.add(concurrencySpinner, gbc);
+
+            gbc.gridx = 0; gbc.gridy++; gbc.fill = GridBagConstraints.NONE;
+            panel.add(new JLabel("Users per page:"), gbc);
+            pageSizeSpinner = new JSpinner(new SpinnerNumberModel(state.effectivePageSize(), 1, 100, 10));
+            gbc.gridx = 1;
+            panel.add(pageSizeSpinner, gbc);
+
+            gbc.gridx = 1; gbc.gridy++; gbc.fill = GridBagConstraints.NONE;
+            graphQlCheckBox = new JCheckBox("Fetch rosters via GraphQL", state.isGraphQlFetch());
+            graphQlCheckBox.setToolTipText("Requests only the user fields completion needs; falls back to REST if the server cannot answer");
+            panel.add(graphQlCheckBox, gbc);
+
             gbc.gridy++; gbc.gridx = 0; gbc.gridwidth = 2;
-            JLabel info = new JLabel("Token requires read_api scope. Group ID is optional.");
+            JLabel info = new JLabel("Token requires read_api scope. Sources, if set, replace the Group ID, e.g. group:12, project:42.");
             info.setFont(info.getFont().deriveFont(Font.ITALIC, info.getFont().getSize() - 1));
             panel.add(info, gbc);
 
@@ -86,10 +114,20 @@ public class GitLabSettingsConfigurable implements Configurable {
         boolean modified = !hostUrlField.getText().equals(state.hostUrl)
                 || !new String(tokenField.getPassword()).equals(state.privateToken)
                 || (groupIdField != null && !Objects.equals(groupIdField.getText(), state.id))
+                || (sourcesField != null && !Objects.equals(sourcesField.getText(), state.sources))
                 || (cacheTtlSpinner != null && (int) cacheTtlSpinner.getValue() != state.cacheTtlSeconds);
         if (maxUsersSpinner != null) {
             modified = modified || (int) maxUsersSpinner.getValue() != state.maxUsersPerQuery;
         }
+        if (concurrencySpinner != null) {
+            modified = modified || (int) concurrencySpinner.getValue() != state.maxConcurrentRequests;
+        }
+        if (pageSizeSpinner != null) {
+            modified = modified || (int) pageSizeSpinner.getValue() != state.pageSize;
+        }
+        if (graphQlCheckBox != null) {
+            modified = modified || graphQlCheckBox.isSelected() != state.isGraphQlFetch();
+        }
         return modified;
     }
 
@@ -106,10 +144,22 @@ public class GitLabSettingsConfigurable implements Configurable {
         state.hostUrl = host;
         state.privateToken = token;
         state.id = groupId; // may be empty => will trigger fetching active users instead of group members
+        if (sourcesField != null) {
+            state.sources = sourcesField.getText().trim();
+        }
         state.cacheTtlSeconds = (int) cacheTtlSpinner.getValue();
         if (maxUsersSpinner != null) {
             state.maxUsersPerQuery = (int) maxUsersSpinner.getValue();
         }
+        if (concurrencySpinner != null) {
+            state.maxConcurrentRequests = (int) concurrencySpinner.getValue();
+        }
+        if (pageSizeSpinner != null) {
+            state.pageSize = (int) pageSizeSpinner.getValue();
+        }
+        if (graphQlCheckBox != null) {
+            state.fetchMode = graphQlCheckBox.isSelected() ? "graphql" : "rest";
+        }
     }
 
     @Override
@@ -118,8 +168,12 @@ public class GitLabSettingsConfigurable implements Configurable {
         hostUrlField.setText(state.hostUrl);
         tokenField.setText(state.privateToken);
         if (groupIdField != null) groupIdField.setText(state.id == null ? "" : state.id);
+        if (sourcesField != null) sourcesField.setText(state.sources == null ? "" : state.sources);
         if (cacheTtlSpinner != null) cacheTtlSpinner.setValue(state.cacheTtlSeconds);
         if (maxUsersSpinner != null) maxUsersSpinner.setValue(state.maxUsersPerQuery);
+        if (concurrencySpinner != null) concurrencySpinner.setValue(state.maxConcurrentRequests);
+        if (pageSizeSpinner != null) pageSizeSpinner.setValue(state.effectivePageSize());
+        if (graphQlCheckBox != null) graphQlCheckBox.setSelected(state.isGraphQlFetch());
     }
 
     @Override
@@ -134,6 +188,10 @@ public class GitLabSettingsConfigurable implements Configurable {
         tokenField = null;
         cacheTtlSpinner = null;
         maxUsersSpinner = null;
+        concurrencySpinner = null;
+        pageSizeSpinner = null;
+        graphQlCheckBox = null;
         groupIdField = null;
+        sourcesField = null;
     }
 }
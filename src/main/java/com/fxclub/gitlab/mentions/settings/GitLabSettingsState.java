@@ -5,13 +5,18 @@ import com.intellij.openapi.components.PersistentStateComponent;
 import com.intellij.openapi.components.Service;
 import com.intellij.openapi.components.State;
 import com.intellij.openapi.components.Storage;
+import com.fxclub.gitlab.mentions.model.GitLabSource;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
 
 @Service(Service.Level.APP)
@@ -22,9 +27,15 @@ public final class GitLabSettingsState implements PersistentStateComponent<GitLa
     public String privateToken = ""; // no hardcoded token
     public int cacheTtlSeconds = 300;
     public int maxUsersPerQuery = 10;
+    public int maxConcurrentRequests = 4; // parallel page fetches per sync
+    public int pageSize = 100; // users per roster page, REST and GraphQL; GitLab caps both at 100
+    /** How rosters are listed: {@code rest} or {@code graphql}, which falls back to REST if the server cannot answer. */
+    public String fetchMode = "rest";
 
     public String scope = "";
     public String id = "";
+    /** Comma- or newline-separated source list, e.g. {@code group:12, project:42@3600, users}; overrides scope/id. */
+    public String sources = "";
 
     public GitLabSettingsState() {
         // Try to load overrides from application.properties on class construction
@@ -47,19 +58,32 @@ public final class GitLabSettingsState implements PersistentStateComponent<GitLa
         String ttlP = trimOrNull(props.getProperty("GITLAB_CACHE_TTL"));
         String maxUsersP = trimOrNull(props.getProperty("GITLAB_MAX_USERS_PER_QUERY"));
         String scopeP = trimOrNull(props.getProperty("GITLAB_SCOPE"));
+        String concurrencyP = trimOrNull(props.getProperty("GITLAB_MAX_CONCURRENT_REQUESTS"));
+        String sourcesP = trimOrNull(props.getProperty("GITLAB_SOURCES"));
+        String pageSizeP = trimOrNull(props.getProperty("GITLAB_PAGE_SIZE"));
+        String fetchModeP = trimOrNull(props.getProperty("GITLAB_FETCH_MODE"));
 
-        boolean anySeparate = urlP != null || tokenP != null || groupIdP != null || ttlP != null || maxUsersP != null || scopeP != null;
+        boolean anySeparate = urlP != null || tokenP != null || groupIdP != null || ttlP != null || maxUsersP != null || scopeP != null
+                || concurrencyP != null || sourcesP != null || pageSizeP != null || fetchModeP != null;
         if (anySeparate) {
             if (urlP != null) hostUrl = urlP;
             if (tokenP != null) privateToken = tokenP;
             if (groupIdP != null) id = groupIdP;
             if (scopeP != null) scope = scopeP;
+            if (sourcesP != null) sources = sourcesP;
+            if (fetchModeP != null) fetchMode = fetchModeP.toLowerCase(Locale.ROOT);
             if (ttlP != null) {
                 try { cacheTtlSeconds = Math.max(0, Integer.parseInt(ttlP)); } catch (NumberFormatException ignored) {}
             }
             if (maxUsersP != null) {
                 try { maxUsersPerQuery = Math.max(1, Integer.parseInt(maxUsersP)); } catch (NumberFormatException ignored) {}
             }
+            if (concurrencyP != null) {
+                try { maxConcurrentRequests = Math.max(1, Integer.parseInt(concurrencyP)); } catch (NumberFormatException ignored) {}
+            }
+            if (pageSizeP != null) {
+                try { pageSize = Integer.parseInt(pageSizeP); } catch (NumberFormatException ignored) {}
+            }
             return; // done
         }
 
@@ -108,6 +132,38 @@ public final class GitLabSettingsState implements PersistentStateComponent<GitLa
         return t.isEmpty() ? null : t;
     }
 
+    /**
+     * Sources to aggregate, in configured order and without duplicates. Falls back to the legacy single
+     * {@code scope}/{@code id} pair: a project or group id if set, otherwise all active users of the instance.
+     */
+    public List<GitLabSource> effectiveSources() {
+        Map<String, GitLabSource> byKey = new LinkedHashMap<>();
+        if (sources != null) {
+            for (String spec : sources.split("[,;\\n]")) {
+                GitLabSource source = GitLabSource.parse(spec);
+                if (source != null) {
+                    byKey.putIfAbsent(source.key(), source);
+                } else if (!spec.isBlank()) {
+                    log.warn("Ignoring malformed GitLab source '{}'", spec.trim());
+                }
+            }
+        }
+        if (!byKey.isEmpty()) return new ArrayList<>(byKey.values());
+        if (id == null || id.isBlank()) return List.of(GitLabSource.users());
+        return List.of("project".equalsIgnoreCase(scope == null ? "" : scope.trim())
+                ? GitLabSource.project(id)
+                : GitLabSource.group(id));
+    }
+
+    /** {@link #pageSize} clamped to what GitLab accepts. */
+    public int effectivePageSize() {
+        return Math.max(1, Math.min(100, pageSize));
+    }
+
+    public boolean isGraphQlFetch() {
+        return "graphql".equalsIgnoreCase(fetchMode == null ? "" : fetchMode.trim());
+    }
+
     public static GitLabSettingsState getInstance() {
         return ApplicationManager.getApplication().getService(GitLabSettingsState.class);
     }
@@ -123,7 +179,11 @@ public final class GitLabSettingsState implements PersistentStateComponent<GitLa
         this.privateToken = state.privateToken;
         this.cacheTtlSeconds = state.cacheTtlSeconds;
         this.maxUsersPerQuery = state.maxUsersPerQuery;
+        this.maxConcurrentRequests = state.maxConcurrentRequests;
+        this.pageSize = state.pageSize;
+        this.fetchMode = state.fetchMode;
         this.scope = state.scope;
         this.id = state.id;
+        this.sources = state.sources;
     }
 }
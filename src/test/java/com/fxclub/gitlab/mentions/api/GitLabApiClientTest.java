@@ -0,0 +1,164 @@
+package com.fxclub.gitlab.mentions.api;
+
+import com.fxclub.gitlab.mentions.fixtures.GitLabStubServer;
+import com.fxclub.gitlab.mentions.fixtures.SyntheticUsers;
+import com.fxclub.gitlab.mentions.model.GitLabRoster;
+import com.fxclub.gitlab.mentions.model.GitLabSource;
+import com.fxclub.gitlab.mentions.model.GitLabUser;
+import com.fxclub.gitlab.mentions.settings.GitLabSettingsState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Offset-paginated member listings against {@link GitLabStubServer}: 1000 members in ten pages of 100, each response
+ * delayed so that overlapping requests show up in the server's in-flight count.
+ */
+class GitLabApiClientTest {
+    private static final List<GitLabUser> USERS = SyntheticUsers.generate(1000);
+    private static final int PAGES = 10;
+    private static final long LATENCY_MS = 30;
+
+    private GitLabStubServer server;
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) server.close();
+    }
+
+    @Test
+    void fetchesPagesConcurrentlyWhenTotalPagesIsKnown() throws IOException {
+        GitLabApiClient client = clientFor(GitLabStubServer.Options.DEFAULT.withLatencyMs(LATENCY_MS));
+
+        GitLabRoster listed = client.listUsers(GitLabSource.group("42"));
+
+        assertEquals(ids(USERS), ids(listed), "all members, in page order");
+        assertEquals(PAGES, server.requestCount());
+        assertTrue(server.maxInFlight() > 1, "pages 2..N overlap, got " + server.maxInFlight());
+    }
+
+    @Test
+    void walksPagesSequentiallyWithoutTotalPages() throws IOException {
+        GitLabApiClient client = clientFor(GitLabStubServer.Options.DEFAULT.withLatencyMs(LATENCY_MS)
+                .withOmitTotalPages(true));
+
+        GitLabRoster listed = client.listUsers(GitLabSource.group("42"));
+
+        assertEquals(ids(USERS), ids(listed));
+        // The last full page cannot tell it is the last, so one empty page follows
+        assertEquals(PAGES + 1, server.requestCount());
+        assertEquals(1, server.maxInFlight());
+    }
+
+    @Test
+    void failedPageFailsConcurrentListing() throws IOException {
+        GitLabApiClient client = clientFor(GitLabStubServer.Options.DEFAULT.withFailingPage(4));
+
+        assertEquals(0, client.listUsers(GitLabSource.group("42")).size(), "no truncated roster");
+    }
+
+    @Test
+    void failedPageFailsSequentialListing() throws IOException {
+        GitLabApiClient client = clientFor(GitLabStubServer.Options.DEFAULT.withOmitTotalPages(true).withFailingPage(4));
+
+        assertEquals(0, client.listUsers(GitLabSource.group("42")).size(), "no truncated roster");
+        assertEquals(4, server.requestCount(), "stops at the failed page");
+    }
+
+    @Test
+    void replaysUnchangedPagesFromTheListedRoster() throws IOException {
+        GitLabApiClient client = clientFor(GitLabStubServer.Options.DEFAULT.withEtags(true));
+        GitLabRoster first = client.listUsers(GitLabSource.group("42"));
+
+        GitLabRoster second = client.listUsers(GitLabSource.group("42"));
+
+        assertEquals(PAGES, client.getHttpCache().hitCount(), "every page answered 304");
+        assertEquals(ids(first), ids(second));
+        assertEquals(ids(USERS), ids(second));
+    }
+
+    @Test
+    void failedListingIsNotCached() throws IOException {
+        GitLabApiClient client = clientFor(GitLabStubServer.Options.DEFAULT.withEtags(true).withFailingPage(4));
+        client.listUsers(GitLabSource.group("42"));
+
+        client.listUsers(GitLabSource.group("42"));
+
+        assertEquals(0, client.getHttpCache().hitCount(), "no validators without a complete roster to replay");
+    }
+
+    @Test
+    void graphQlListsMembersReachedThroughSeveralRelationsOnce() throws IOException {
+        GitLabApiClient client = clientFor(GitLabStubServer.Options.DEFAULT, "graphql");
+
+        GitLabRoster listed = client.listUsers(GitLabSource.group("42"));
+
+        assertEquals(ids(USERS), ids(listed));
+        assertTrue(server.requestCount("/api/graphql") > 1, "listed through several GraphQL pages");
+    }
+
+    @Test
+    void graphQlModeListsActiveUsersOverRest() throws IOException {
+        GitLabApiClient client = clientFor(GitLabStubServer.Options.DEFAULT, "graphql");
+
+        GitLabRoster listed = client.listUsers(GitLabSource.users());
+
+        assertEquals(ids(USERS), ids(listed));
+        assertEquals(0, server.requestCount("/api/graphql"), "GraphQL cannot filter users on the server");
+    }
+
+    @Test
+    void searchReturnsBeforeTheServerAnswers() throws Exception {
+        GitLabApiClient client = clientFor(GitLabStubServer.Options.DEFAULT.withLatencyMs(500));
+
+        long startedNanos = System.nanoTime();
+        CompletableFuture<List<GitLabUser>> search = client.searchUsersAsync(USERS.get(0).getUsername(), 10);
+
+        assertTrue(System.nanoTime() - startedNanos < TimeUnit.MILLISECONDS.toNanos(250), "the caller never waits");
+        assertFalse(search.isDone());
+        assertEquals(USERS.get(0).getId(), search.get(5, TimeUnit.SECONDS).get(0).getId());
+    }
+
+    @Test
+    void searchRetriesTransientFailures() throws Exception {
+        GitLabApiClient client = clientFor(GitLabStubServer.Options.DEFAULT.withErrorEvery(2));
+        String username = USERS.get(0).getUsername();
+        client.searchUsersAsync(username, 10).get(5, TimeUnit.SECONDS);
+
+        // The second request answers 500, the third one succeeds
+        List<GitLabUser> found = client.searchUsersAsync(username, 10).get(10, TimeUnit.SECONDS);
+
+        assertEquals(USERS.get(0).getId(), found.get(0).getId());
+        assertEquals(3, server.requestCount());
+    }
+
+    private GitLabApiClient clientFor(GitLabStubServer.Options options) throws IOException {
+        return clientFor(options, "rest");
+    }
+
+    private GitLabApiClient clientFor(GitLabStubServer.Options options, String fetchMode) throws IOException {
+        server = GitLabStubServer.start(USERS, options);
+        GitLabSettingsState settings = new GitLabSettingsState();
+        settings.hostUrl = server.baseUrl();
+        settings.privateToken = "test";
+        settings.maxConcurrentRequests = 4;
+        settings.fetchMode = fetchMode;
+        return new GitLabApiClient(() -> settings);
+    }
+
+    private static List<Long> ids(List<GitLabUser> users) {
+        return users.stream().map(GitLabUser::getId).toList();
+    }
+
+    private static List<Long> ids(GitLabRoster roster) {
+        return ids(roster.toList());
+    }
+}
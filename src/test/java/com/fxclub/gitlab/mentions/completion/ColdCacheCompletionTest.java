@@ -0,0 +1,98 @@
+package com.fxclub.gitlab.mentions.completion;
+
+import com.fxclub.gitlab.mentions.fixtures.GitLabStubServer;
+import com.fxclub.gitlab.mentions.fixtures.SyntheticUsers;
+import com.fxclub.gitlab.mentions.model.GitLabUser;
+import com.fxclub.gitlab.mentions.service.GitLabUserService;
+import com.fxclub.gitlab.mentions.settings.GitLabSettingsState;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * '@' completion before the first fetch, against a {@link GitLabStubServer} that takes seconds per page: completion
+ * must answer from the empty cache at once while the background refresh is still running, and offer the fetched
+ * users once it is done.
+ */
+public class ColdCacheCompletionTest extends BasePlatformTestCase {
+    private static final List<GitLabUser> USERS = SyntheticUsers.generate(300);
+    private static final long LATENCY_MS = 3000;
+    private static final int REFRESH_TIMEOUT_SECONDS = 60;
+    /** Headless tests run background tasks synchronously unless this is set. */
+    private static final String ASYNC_TASKS_PROPERTY = "intellij.progress.task.ignoreHeadless";
+
+    private GitLabStubServer server;
+    private final GitLabSettingsState saved = new GitLabSettingsState();
+    private String savedAsyncTasks;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        savedAsyncTasks = System.setProperty(ASYNC_TASKS_PROPERTY, "true");
+        server = GitLabStubServer.start(USERS, GitLabStubServer.Options.DEFAULT.withLatencyMs(LATENCY_MS));
+        GitLabSettingsState settings = GitLabSettingsState.getInstance();
+        saved.loadState(settings);
+        settings.hostUrl = server.baseUrl();
+        settings.privateToken = "test";
+        settings.scope = "";
+        settings.id = "";
+        settings.sources = "group:42";
+        settings.fetchMode = "rest";
+        service().clearCache();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            service().clearCache();
+            GitLabSettingsState.getInstance().loadState(saved);
+            server.close();
+            if (savedAsyncTasks == null) {
+                System.clearProperty(ASYNC_TASKS_PROPERTY);
+            } else {
+                System.setProperty(ASYNC_TASKS_PROPERTY, savedAsyncTasks);
+            }
+        } catch (Throwable t) {
+            addSuppressedException(t);
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testEmptyCacheCompletesWithoutWaitingForTheServer() {
+        String username = USERS.get(USERS.size() / 2).getUsername();
+        String prefix = username.substring(0, username.length() - 1);
+
+        long startedNanos = System.nanoTime();
+        List<String> offered = complete(prefix);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+
+        assertTrue("completion took " + millis + " ms against a server answering in " + LATENCY_MS + " ms",
+                millis < LATENCY_MS / 2);
+        assertEquals("nothing cached yet", List.of(), offered);
+        assertTrue("the refresh is still in flight", service().getIndex().isEmpty());
+
+        PlatformTestUtil.waitWithEventsDispatching("the background refresh did not finish",
+                () -> service().getIndex().size() == USERS.size(), REFRESH_TIMEOUT_SECONDS);
+
+        List<String> refreshed = complete(prefix);
+        // A single match is inserted right away instead of being offered
+        assertTrue("offered " + refreshed, refreshed.contains(username)
+                || myFixture.getEditor().getDocument().getText().equals("Thanks @" + username));
+    }
+
+    /** The usernames offered for {@code @prefix}, best first. */
+    private List<String> complete(String prefix) {
+        myFixture.configureByText("notes.md", "Thanks @" + prefix + "<caret>");
+        myFixture.completeBasic();
+        List<String> offered = myFixture.getLookupElementStrings();
+        return offered == null ? List.of() : offered;
+    }
+
+    private static GitLabUserService service() {
+        return ApplicationManager.getApplication().getService(GitLabUserService.class);
+    }
+}
@@ -0,0 +1,122 @@
+package com.fxclub.gitlab.mentions.completion;
+
+import com.fxclub.gitlab.mentions.fixtures.GitLabStubServer;
+import com.fxclub.gitlab.mentions.fixtures.SyntheticUsers;
+import com.fxclub.gitlab.mentions.model.GitLabUser;
+import com.fxclub.gitlab.mentions.service.GitLabUserService;
+import com.fxclub.gitlab.mentions.settings.GitLabSettingsState;
+import com.intellij.codeInsight.lookup.Lookup;
+import com.intellij.codeInsight.lookup.LookupElement;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * '@' completion in a Markdown file over a 10k-user roster that the service fetched from {@link GitLabStubServer},
+ * checking the offered usernames and how long completion takes per keystroke.
+ */
+public class MentionCompletionTest extends BasePlatformTestCase {
+    private static final List<GitLabUser> USERS = SyntheticUsers.generate(10_000);
+    private static final int MAX_ITEMS = 10;
+    /** Generous for CI machines; a warm lookup over 10k users takes well under a millisecond in the index. */
+    private static final long MAX_MEDIAN_KEYSTROKE_MS = 50;
+
+    private GitLabStubServer server;
+    private final GitLabSettingsState saved = new GitLabSettingsState();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = GitLabStubServer.start(USERS, GitLabStubServer.Options.DEFAULT);
+        GitLabSettingsState settings = GitLabSettingsState.getInstance();
+        saved.loadState(settings);
+        settings.hostUrl = server.baseUrl();
+        settings.privateToken = "test";
+        settings.scope = "";
+        settings.id = "";
+        settings.sources = "";
+        settings.fetchMode = "rest";
+        settings.maxUsersPerQuery = MAX_ITEMS;
+        assertEquals(USERS.size(), service().forceReloadMembers());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            service().clearCache();
+            GitLabSettingsState.getInstance().loadState(saved);
+            server.close();
+        } catch (Throwable t) {
+            addSuppressedException(t);
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testOffersBestMatchesForPrefix() {
+        List<String> expected = USERS.stream()
+                .map(GitLabUser::getUsername)
+                .filter(name -> name.startsWith("james.s"))
+                .toList();
+        assertTrue("the roster has enough matches", expected.size() >= MAX_ITEMS);
+
+        List<String> offered = complete("james.s");
+
+        assertEquals(MAX_ITEMS, offered.size());
+        assertTrue("only prefix matches: " + offered, expected.containsAll(offered));
+    }
+
+    public void testInsertsSelectedUser() {
+        GitLabUser bot = USERS.stream().filter(GitLabUser::isBot).findFirst().orElseThrow();
+        String typed = bot.getUsername().substring(0, bot.getUsername().length() - 2);
+        myFixture.configureByText("notes.md", "Thanks @" + typed + "<caret>");
+
+        LookupElement[] items = myFixture.completeBasic();
+        if (items != null) {
+            // Fuzzy matches, if any, follow the only prefix match
+            assertEquals(bot.getUsername(), items[0].getLookupString());
+            myFixture.finishLookup(Lookup.NORMAL_SELECT_CHAR);
+        }
+        myFixture.checkResult("Thanks @" + bot.getUsername() + "<caret>");
+    }
+
+    public void testUnknownPrefixOffersNothing() {
+        assertEquals(List.of(), complete("xq"));
+    }
+
+    public void testKeystrokeLatency() {
+        String username = "natalia.kozlov";
+        complete(username.substring(0, 1)); // class loading and the first lookup elements
+        long[] millis = new long[username.length()];
+        for (int typed = 1; typed <= username.length(); typed++) {
+            myFixture.configureByText("notes.md", "cc @" + username.substring(0, typed) + "<caret>");
+            long startedNanos = System.nanoTime();
+            myFixture.completeBasic();
+            millis[typed - 1] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+            List<String> offered = myFixture.getLookupElementStrings();
+            assertNotNull("'" + username.substring(0, typed) + "' offers users", offered);
+            assertTrue(offered.size() <= MAX_ITEMS);
+        }
+        assertTrue("the full username narrows to its matches: " + myFixture.getLookupElementStrings(),
+                myFixture.getLookupElementStrings().stream().allMatch(s -> s.startsWith(username)));
+        Arrays.sort(millis);
+        long median = millis[millis.length / 2];
+        assertTrue("median completion per keystroke " + median + " ms, slowest " + millis[millis.length - 1] + " ms",
+                median <= MAX_MEDIAN_KEYSTROKE_MS);
+    }
+
+    /** The usernames offered for {@code @prefix}, best first. */
+    private List<String> complete(String prefix) {
+        myFixture.configureByText("notes.md", "Thanks @" + prefix + "<caret>");
+        myFixture.completeBasic();
+        List<String> offered = myFixture.getLookupElementStrings();
+        return offered == null ? List.of() : offered;
+    }
+
+    private static GitLabUserService service() {
+        return ApplicationManager.getApplication().getService(GitLabUserService.class);
+    }
+}
@@ -0,0 +1,116 @@
+package com.fxclub.gitlab.mentions.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+    private static final double MAX_RELATIVE_ERROR = 0.125;
+
+    @Test
+    void smallValuesHaveABucketEach() {
+        for (int micros = 0; micros < 8; micros++) {
+            assertEquals(micros, LatencyHistogram.bucketOf(micros));
+            assertEquals(micros + 1, LatencyHistogram.upperBound(micros));
+        }
+    }
+
+    @Test
+    void bucketsAreContiguousAndNarrow() {
+        int previous = -1;
+        for (long micros = 0; micros < (1L << 36); micros = micros < 4096 ? micros + 1 : micros + micros / 97) {
+            int bucket = LatencyHistogram.bucketOf(micros);
+            long lower = bucket == 0 ? 0 : LatencyHistogram.upperBound(bucket - 1);
+            long upper = LatencyHistogram.upperBound(bucket);
+            assertTrue(lower <= micros && micros < upper, micros + " µs outside [" + lower + ", " + upper + ")");
+            assertTrue(bucket >= previous, "buckets grow with the value at " + micros + " µs");
+            if (micros >= 8) {
+                assertTrue(upper - lower <= lower * MAX_RELATIVE_ERROR, "bucket of " + micros + " µs too wide");
+            }
+            previous = bucket;
+        }
+    }
+
+    @Test
+    void powersOfTwoStartABucket() {
+        for (int exponent = 3; exponent <= 36; exponent++) {
+            long micros = 1L << exponent;
+            int bucket = LatencyHistogram.bucketOf(micros);
+            assertEquals(micros, LatencyHistogram.upperBound(bucket - 1), "2^" + exponent);
+            assertEquals(bucket - 1, LatencyHistogram.bucketOf(micros - 1));
+        }
+    }
+
+    @Test
+    void hugeValuesLandInTheLastBucket() {
+        int last = LatencyHistogram.bucketOf(Long.MAX_VALUE);
+        assertEquals(last, LatencyHistogram.bucketOf(1L << 40));
+        assertTrue(LatencyHistogram.bucketOf((1L << 37) - 1) <= last);
+    }
+
+    @Test
+    void percentilesAreBucketUpperBoundsWithinTheError() {
+        LatencyHistogram h = new LatencyHistogram("test");
+        for (int ms = 1; ms <= 100; ms++) h.recordNanos(TimeUnit.MILLISECONDS.toNanos(ms));
+
+        assertWithinError(50_000, h.percentileMicros(0.50));
+        assertWithinError(90_000, h.percentileMicros(0.90));
+        assertWithinError(99_000, h.percentileMicros(0.99));
+        assertEquals(100_000, h.percentileMicros(1.0), "capped by the largest value");
+        assertWithinError(1_000, h.percentileMicros(0.0));
+        assertEquals(100, h.count());
+        assertEquals(50_500.0, h.meanMicros(), 1e-9);
+        assertEquals(100_000, h.maxMicros());
+    }
+
+    @Test
+    void singleValueIsReportedExactly() {
+        LatencyHistogram h = new LatencyHistogram("test");
+        h.recordNanos(TimeUnit.MICROSECONDS.toNanos(12_345));
+
+        assertEquals(12_345, h.percentileMicros(0.5));
+        assertEquals(12_345, h.percentileMicros(0.99));
+    }
+
+    @Test
+    void emptyAndResetHistogramsReportZero() {
+        LatencyHistogram h = new LatencyHistogram("page request");
+        assertEquals(0, h.percentileMicros(0.5));
+        assertEquals(0.0, h.meanMicros());
+        assertEquals("page request: n=0", h.summary());
+
+        h.recordNanos(TimeUnit.MILLISECONDS.toNanos(40));
+        h.reset();
+
+        assertEquals(0, h.count());
+        assertEquals(0, h.percentileMicros(0.99));
+        assertEquals(0, h.maxMicros());
+    }
+
+    @Test
+    void negativeDurationsCountAsZero() {
+        LatencyHistogram h = new LatencyHistogram("test");
+        h.recordNanos(-5_000);
+
+        assertEquals(1, h.count());
+        assertEquals(0, h.maxMicros());
+        assertEquals(0, h.percentileMicros(1.0));
+    }
+
+    @Test
+    void summaryFormatsMilliseconds() {
+        LatencyHistogram h = new LatencyHistogram("page request");
+        h.recordNanos(TimeUnit.MICROSECONDS.toNanos(40_100));
+
+        assertEquals("page request: n=1 p50=40.1 ms p90=40.1 ms p99=40.1 ms max=40.1 ms", h.summary());
+    }
+
+    /** A percentile is the upper bound of its bucket: never below the true value and at most 12.5% above it. */
+    private static void assertWithinError(long expectedMicros, long actualMicros) {
+        assertTrue(actualMicros >= expectedMicros && actualMicros <= expectedMicros * (1 + MAX_RELATIVE_ERROR),
+                actualMicros + " µs for " + expectedMicros + " µs");
+    }
+}
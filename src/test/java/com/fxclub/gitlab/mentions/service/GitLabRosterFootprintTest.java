@@ -0,0 +1,54 @@
+package com.fxclub.gitlab.mentions.service;
+
+import com.fxclub.gitlab.mentions.fixtures.SyntheticUsers;
+import com.fxclub.gitlab.mentions.model.GitLabRoster;
+import com.fxclub.gitlab.mentions.model.GitLabUser;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Retained heap of a 100k-user snapshot measured with JOL, against the {@code ArrayList<GitLabUser>} the service kept
+ * before rosters became columnar. The search index is the same over either shape, so the old snapshot is counted as
+ * the list plus what the index holds besides its roster.
+ */
+class GitLabRosterFootprintTest {
+    private static final List<GitLabUser> USERS = SyntheticUsers.generate(100_000);
+    /** {@link GitLabRoster#footprintBytes()} leaves out the roster object itself and rounds array headers. */
+    private static final double FOOTPRINT_TOLERANCE = 0.01;
+
+    @Test
+    void rosterIsAtMostSixtyPercentOfUserObjects() {
+        long listBytes = GraphLayout.parseInstance(new ArrayList<>(USERS)).totalSize();
+        long rosterBytes = GraphLayout.parseInstance(GitLabRoster.of(USERS)).totalSize();
+
+        assertTrue(rosterBytes <= listBytes * 0.6, "roster " + rosterBytes + " B, list " + listBytes + " B");
+    }
+
+    @Test
+    void indexedSnapshotIsAtMostThreeQuartersOfTheOldShape() {
+        GitLabRoster roster = GitLabRoster.of(USERS);
+        GitLabUserIndex index = new GitLabUserIndex(roster);
+        long rosterBytes = GraphLayout.parseInstance(roster).totalSize();
+        long snapshotBytes = GraphLayout.parseInstance(roster, index).totalSize();
+        long indexBytes = snapshotBytes - rosterBytes;
+        long oldBytes = GraphLayout.parseInstance(new ArrayList<>(USERS)).totalSize() + indexBytes;
+
+        assertTrue(snapshotBytes <= oldBytes * 0.75,
+                "roster+index " + snapshotBytes + " B, list+index " + oldBytes + " B");
+    }
+
+    @Test
+    void footprintBytesMatchesMeasuredSize() {
+        GitLabRoster roster = GitLabRoster.of(USERS);
+        long measured = GraphLayout.parseInstance(roster).totalSize();
+        long estimated = roster.footprintBytes();
+
+        assertTrue(Math.abs(measured - estimated) <= measured * FOOTPRINT_TOLERANCE,
+                "footprintBytes() " + estimated + " B, JOL " + measured + " B");
+    }
+}
@@ -0,0 +1,56 @@
+package com.fxclub.gitlab.mentions.service;
+
+import com.fxclub.gitlab.mentions.fixtures.SyntheticUsers;
+import com.fxclub.gitlab.mentions.model.GitLabRoster;
+import com.fxclub.gitlab.mentions.model.GitLabUser;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GitLabUserIndexTest {
+
+    @Test
+    void shortPrefixFindsUsernamesStartingWithPunctuation() {
+        List<GitLabUser> users = new ArrayList<>(SyntheticUsers.generate(1000));
+        users.add(user(2001, "_bot", "Deploy bot"));
+        users.add(user(2002, ".svc", "Service account"));
+        GitLabUserIndex index = new GitLabUserIndex(GitLabRoster.of(users));
+
+        assertEquals(List.of("_bot"), usernames(index.search("_b", 1)));
+        assertEquals(List.of(".svc"), usernames(index.search(".s", 1)));
+        assertEquals(List.of("_bot"), usernames(index.search("_", 1)));
+    }
+
+    @Test
+    void prefixRanksAboveWordPrefixAndSubstring() {
+        GitLabUserIndex index = new GitLabUserIndex(GitLabRoster.of(List.of(
+                user(1, "jo.smith", "Jo Smith"),
+                user(2, "smith", "Anna Smith"),
+                user(3, "blacksmith", "Black Smith"))));
+
+        assertEquals(List.of("smith", "jo.smith", "blacksmith"), usernames(index.search("smi", 3)));
+    }
+
+    @Test
+    void positionsMatchSearchOrder() {
+        GitLabRoster roster = GitLabRoster.of(SyntheticUsers.generate(5000));
+        GitLabUserIndex index = new GitLabUserIndex(roster);
+
+        for (String query : List.of("j", "ja", "james.s", "smi", "jsm", "bot")) {
+            List<String> byPosition = new ArrayList<>();
+            for (int i : index.searchPositions(query, 10, null)) byPosition.add(roster.username(i));
+            assertEquals(usernames(index.search(query, 10)), byPosition, query);
+        }
+    }
+
+    private static GitLabUser user(long id, String username, String name) {
+        return GitLabUser.builder().id(id).username(username).name(name).state("active").build();
+    }
+
+    private static List<String> usernames(List<GitLabUser> users) {
+        return users.stream().map(GitLabUser::getUsername).toList();
+    }
+}
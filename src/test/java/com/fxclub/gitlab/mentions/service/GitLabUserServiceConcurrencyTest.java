@@ -0,0 +1,179 @@
+package com.fxclub.gitlab.mentions.service;
+
+import com.fxclub.gitlab.mentions.fixtures.GitLabStubServer;
+import com.fxclub.gitlab.mentions.fixtures.SyntheticUsers;
+import com.fxclub.gitlab.mentions.model.GitLabUser;
+import com.fxclub.gitlab.mentions.settings.GitLabSettingsState;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Completion readers racing against refreshes and cache clears of three sources served by {@link GitLabStubServer}.
+ * Every source lists the same users, so any index a reader sees is either empty or complete.
+ */
+public class GitLabUserServiceConcurrencyTest extends BasePlatformTestCase {
+    private static final List<GitLabUser> USERS = SyntheticUsers.generate(2000);
+    private static final List<String> LISTING_PATHS = List.of(
+            "/api/v4/groups/1/members/all", "/api/v4/projects/2/members/all", "/api/v4/users");
+    private static final int REFRESHERS = 16;
+    private static final int READERS = 8;
+    private static final long DEADLOCK_TIMEOUT_SECONDS = 60;
+
+    private GitLabStubServer server;
+    private final GitLabSettingsState saved = new GitLabSettingsState();
+    private ExecutorService pool;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // Slow enough that every refresher arrives while the first listing is still running
+        server = GitLabStubServer.start(USERS, GitLabStubServer.Options.DEFAULT.withLatencyMs(50));
+        GitLabSettingsState settings = GitLabSettingsState.getInstance();
+        saved.loadState(settings);
+        settings.hostUrl = server.baseUrl();
+        settings.privateToken = "test";
+        settings.sources = "group:1, project:2, users";
+        settings.fetchMode = "rest";
+        settings.cacheTtlSeconds = 3600;
+        pool = Executors.newFixedThreadPool(REFRESHERS + READERS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            pool.shutdownNow();
+            service().clearCache();
+            GitLabSettingsState.getInstance().loadState(saved);
+            server.close();
+        } catch (Throwable t) {
+            addSuppressedException(t);
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testConcurrentReloadsFetchEachSourceOnce() throws Exception {
+        // One reload on its own tells how many requests a single fetch of each source takes
+        assertEquals(USERS.size(), service().forceReloadMembers());
+        Map<String, Long> single = counts();
+        service().clearCache();
+
+        CyclicBarrier start = new CyclicBarrier(REFRESHERS);
+        AtomicBoolean done = new AtomicBoolean();
+        Set<Integer> seenSizes = ConcurrentHashMap.newKeySet();
+        List<Future<Integer>> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) readers.add(pool.submit(() -> read(done, seenSizes)));
+        List<Callable<Integer>> refreshers = new ArrayList<>();
+        for (int t = 0; t < REFRESHERS; t++) {
+            refreshers.add(() -> {
+                start.await();
+                return service().forceReloadMembers();
+            });
+        }
+        List<Future<Integer>> reloads = pool.invokeAll(refreshers, DEADLOCK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        done.set(true);
+
+        for (Future<Integer> f : reloads) {
+            assertFalse("a reload did not finish in time", f.isCancelled());
+            assertEquals("every caller gets the shared result", USERS.size(), (int) f.get());
+        }
+        for (Future<Integer> f : readers) f.get(DEADLOCK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        Map<String, Long> concurrent = counts();
+        for (String path : LISTING_PATHS) {
+            assertEquals("requests for " + path, 2 * single.get(path), (long) concurrent.get(path));
+        }
+        assertEquals(USERS.size(), service().getIndex().size());
+        assertTrue("readers saw a partial index: " + seenSizes, Set.of(0, USERS.size()).containsAll(seenSizes));
+    }
+
+    public void testClearCacheRacingRefreshesLosesNoUpdate() throws Exception {
+        CyclicBarrier start = new CyclicBarrier(REFRESHERS);
+        AtomicBoolean done = new AtomicBoolean();
+        Set<Integer> seenSizes = ConcurrentHashMap.newKeySet();
+        List<Future<Integer>> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) readers.add(pool.submit(() -> read(done, seenSizes)));
+        List<Callable<Integer>> racers = new ArrayList<>();
+        for (int t = 0; t < REFRESHERS; t++) {
+            int role = t % 3;
+            racers.add(() -> {
+                start.await();
+                for (int round = 0; round < 3; round++) {
+                    switch (role) {
+                        case 0 -> service().forceReloadMembers();
+                        case 1 -> service().refreshMembers();
+                        default -> service().clearCache();
+                    }
+                }
+                return role;
+            });
+        }
+        List<Future<Integer>> results = pool.invokeAll(racers, DEADLOCK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        done.set(true);
+
+        for (Future<Integer> f : results) {
+            assertFalse("a refresher did not finish in time", f.isCancelled());
+            f.get();
+        }
+        for (Future<Integer> f : readers) f.get(DEADLOCK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertTrue("readers saw a partial index: " + seenSizes, Set.of(0, USERS.size()).containsAll(seenSizes));
+        // Whatever the race left behind, the next refresh completes every source
+        assertEquals(USERS.size(), service().refreshMembers());
+        for (int size : service().getSourceSizes().values()) assertEquals(USERS.size(), size);
+    }
+
+    public void testRefreshFinishingAfterClearCacheIsDropped() throws Exception {
+        GitLabSettingsState settings = GitLabSettingsState.getInstance();
+        settings.sources = "group:7";
+        Future<Integer> reload = pool.submit(() -> service().forceReloadMembers());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DEADLOCK_TIMEOUT_SECONDS);
+        while (server.requestCount("/api/v4/groups/7/members/all") == 0) {
+            assertTrue("the listing never started", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+        service().clearCache();
+
+        int published = reload.get(DEADLOCK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals("the cleared segment publishes nothing", 0, published);
+        assertTrue(service().getIndex().isEmpty());
+        Path snapshots = Path.of(PathManager.getSystemPath()).resolve("gitlab-mentions");
+        assertEquals("no snapshot is written for it", GitLabUserSnapshotStore.Header.NONE,
+                new GitLabUserSnapshotStore(snapshots).readHeader(settings.hostUrl, settings.privateToken, "group:7"));
+    }
+
+    /** Completes like the contributor does until {@code done}; returns the number of lookups. */
+    private static int read(AtomicBoolean done, Set<Integer> seenSizes) {
+        int lookups = 0;
+        while (!done.get()) {
+            GitLabUserIndex index = service().getIndex();
+            seenSizes.add(index.size());
+            index.search("ja", 10);
+            lookups++;
+        }
+        return lookups;
+    }
+
+    private Map<String, Long> counts() {
+        Map<String, Long> counts = new ConcurrentHashMap<>();
+        for (String path : LISTING_PATHS) counts.put(path, server.requestCount(path));
+        return counts;
+    }
+
+    private static GitLabUserService service() {
+        return ApplicationManager.getApplication().getService(GitLabUserService.class);
+    }
+}
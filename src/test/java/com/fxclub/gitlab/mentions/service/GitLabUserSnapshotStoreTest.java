@@ -0,0 +1,92 @@
+package com.fxclub.gitlab.mentions.service;
+
+import com.fxclub.gitlab.mentions.fixtures.SyntheticUsers;
+import com.fxclub.gitlab.mentions.model.GitLabRoster;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class GitLabUserSnapshotStoreTest {
+    private static final String HOST = "https://gitlab.example.com";
+    private static final String TOKEN = "glpat-first";
+
+    private Path dir;
+    private GitLabUserSnapshotStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("gitlab-snapshots");
+        store = new GitLabUserSnapshotStore(dir);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+
+    @Test
+    void roundTripsUsersAndHeader() {
+        GitLabRoster roster = GitLabRoster.of(SyntheticUsers.generate(500));
+
+        long generation = store.save(HOST, TOKEN, "group:42", roster, 1_700_000_000L);
+        GitLabUserSnapshotStore.Snapshot loaded = store.load(HOST, TOKEN, "group:42");
+
+        assertEquals(1, generation);
+        // GitLabUser equality only looks at the id; compare every field
+        assertEquals(roster.toList().toString(), loaded.roster().toList().toString());
+        assertEquals(1_700_000_000L, loaded.fetchedAtEpochSec());
+        assertEquals(new GitLabUserSnapshotStore.Header(1, 1_700_000_000L), store.readHeader(HOST, TOKEN, "group:42"));
+    }
+
+    @Test
+    void replacesAFileThatWasJustLoaded() {
+        store.save(HOST, TOKEN, "users", GitLabRoster.of(SyntheticUsers.generate(10)), 1L);
+        store.load(HOST, TOKEN, "users");
+
+        GitLabRoster next = GitLabRoster.of(SyntheticUsers.generate(20));
+        assertEquals(2, store.save(HOST, TOKEN, "users", next, 2L));
+        assertEquals(20, store.load(HOST, TOKEN, "users").roster().size());
+    }
+
+    @Test
+    void truncatedFileLoadsAsEmpty() throws IOException {
+        store.save(HOST, TOKEN, "users", GitLabRoster.of(SyntheticUsers.generate(100)), 1L);
+        Path file = onlySnapshotFile();
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+
+        assertSame(GitLabRoster.EMPTY, store.load(HOST, TOKEN, "users").roster());
+    }
+
+    @Test
+    void snapshotsAreKeptPerToken() throws IOException {
+        store.save(HOST, TOKEN, "users", GitLabRoster.of(SyntheticUsers.generate(30)), 1L);
+
+        assertSame(GitLabRoster.EMPTY, store.load(HOST, "glpat-second", "users").roster(), "another account's view");
+        assertEquals(GitLabUserSnapshotStore.Header.NONE, store.readHeader(HOST, "glpat-second", "users"));
+        assertEquals(30, store.load(HOST, TOKEN, "users").roster().size());
+        assertFalse(onlySnapshotFile().getFileName().toString().contains(TOKEN));
+    }
+
+    private Path onlySnapshotFile() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> snapshots = files.filter(p -> p.toString().endsWith(".bin")).toList();
+            assertEquals(1, snapshots.size());
+            return snapshots.get(0);
+        }
+    }
+}
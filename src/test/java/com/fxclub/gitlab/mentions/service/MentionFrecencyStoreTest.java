@@ -0,0 +1,39 @@
+package com.fxclub.gitlab.mentions.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.function.LongToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MentionFrecencyStoreTest {
+
+    @Test
+    void keepsTheStrongestUsersOnceFull() {
+        MentionFrecencyStore store = new MentionFrecencyStore();
+        for (int i = 0; i < 10; i++) store.recordMention(1);
+        for (long id = 2; id <= 2000; id++) store.recordMention(id);
+
+        assertTrue(store.getState().mentions.size() <= 512, "kept " + store.getState().mentions.size());
+        LongToIntFunction boosts = store.boosts();
+        assertTrue(boosts.applyAsInt(1) > 0, "the most mentioned user survives");
+        assertTrue(boosts.applyAsInt(2000) > 0, "the latest mention survives");
+        assertEquals(1, store.getState().mentions.get(0).id);
+    }
+
+    @Test
+    void roundTripsThroughState() {
+        MentionFrecencyStore store = new MentionFrecencyStore();
+        store.recordMention(7);
+        store.recordMention(7);
+        store.recordMention(42);
+
+        MentionFrecencyStore loaded = new MentionFrecencyStore();
+        loaded.loadState(store.getState());
+
+        assertEquals(store.boosts().applyAsInt(7), loaded.boosts().applyAsInt(7));
+        assertEquals(store.boosts().applyAsInt(42), loaded.boosts().applyAsInt(42));
+        assertEquals(0, loaded.boosts().applyAsInt(99));
+    }
+}
@@ -0,0 +1,191 @@
+package com.fxclub.gitlab.mentions.service;
+
+import com.fxclub.gitlab.mentions.api.GitLabApiClient;
+import com.fxclub.gitlab.mentions.fixtures.GitLabStubServer;
+import com.fxclub.gitlab.mentions.model.GitLabUser;
+import com.fxclub.gitlab.mentions.settings.GitLabSettingsState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Server-side user search against {@link GitLabStubServer}, with a manual clock for cache expiry. */
+class RemoteUserSearchTest {
+    private static final List<GitLabUser> USERS = List.of(
+            user(1, "jane.doe", "Jane Doe"),
+            user(2, "jamal.khan", "Jamal Khan"),
+            user(3, "james.smith", "James Smith"),
+            user(4, "james.brown", "James Brown"),
+            user(5, "jo.smith", "Jo Smith"),
+            user(6, "anna.jay", "Anna Jay"),
+            user(7, "bob.ross", "Bob Ross"));
+    private static final String SEARCH_PATH = "/api/v4/users";
+    private static final long CACHE_TTL_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final int MAX_CACHED_PREFIXES = 64;
+
+    private GitLabStubServer server;
+    private GitLabApiClient client;
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = GitLabStubServer.start(USERS, GitLabStubServer.Options.DEFAULT);
+        GitLabSettingsState settings = new GitLabSettingsState();
+        settings.hostUrl = server.baseUrl();
+        settings.privateToken = "test";
+        client = new GitLabApiClient(() -> settings);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void waitsForTheQuietPeriodBeforeSending() throws Exception {
+        RemoteUserSearch search = searchWithDebounce(300);
+        long startedNanos = System.nanoTime();
+        CompletableFuture<List<GitLabUser>> found = search.searchAsync("host", "james", 10);
+
+        assertTrue(System.nanoTime() - startedNanos < TimeUnit.MILLISECONDS.toNanos(100), "the caller never waits");
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertEquals(0, server.requestCount(SEARCH_PATH), "nothing sent while the user may still be typing");
+
+        assertEquals(List.of("james.smith", "james.brown"), usernames(found.get(5, TimeUnit.SECONDS)));
+        assertTrue(System.nanoTime() - startedNanos >= TimeUnit.MILLISECONDS.toNanos(300));
+        assertEquals(1, server.requestCount(SEARCH_PATH));
+        assertEquals(List.of("james.smith", "james.brown"), usernames(search.cached("host", "james", 10)));
+    }
+
+    @Test
+    void newerPrefixReplacesSearchStillWaiting() throws Exception {
+        RemoteUserSearch search = searchWithDebounce(300);
+        CompletableFuture<List<GitLabUser>> first = search.searchAsync("host", "jam", 10);
+        TimeUnit.MILLISECONDS.sleep(50);
+
+        CompletableFuture<List<GitLabUser>> second = search.searchAsync("host", "jame", 10);
+
+        assertTrue(first.isCancelled(), "typing on drops the shorter prefix");
+        assertEquals(List.of("james.smith", "james.brown"), usernames(second.get(5, TimeUnit.SECONDS)));
+        assertEquals(1, server.requestCount(SEARCH_PATH));
+    }
+
+    @Test
+    void callersOfTheSamePrefixShareOneSearch() throws Exception {
+        RemoteUserSearch search = searchWithDebounce(100);
+
+        CompletableFuture<List<GitLabUser>> first = search.searchAsync("host", "smith", 10);
+        CompletableFuture<List<GitLabUser>> second = search.searchAsync("host", "Smith", 10);
+
+        assertSame(first, second);
+        first.get(5, TimeUnit.SECONDS);
+        assertEquals(1, server.requestCount(SEARCH_PATH));
+    }
+
+    @Test
+    void clearedDuringQuietPeriodSendsNothing() throws Exception {
+        RemoteUserSearch search = searchWithDebounce(300);
+        CompletableFuture<List<GitLabUser>> found = search.searchAsync("host", "jam", 10);
+
+        search.clear();
+
+        assertTrue(found.isCancelled());
+        TimeUnit.MILLISECONDS.sleep(400);
+        assertEquals(0, server.requestCount(SEARCH_PATH));
+    }
+
+    @Test
+    void cachedAnswerIsReusedUntilItExpires() {
+        RemoteUserSearch search = searchWithDebounce(0);
+        search(search, "host", "smith", 10);
+
+        now.addAndGet(CACHE_TTL_MS - 1);
+        assertEquals(List.of("james.smith", "jo.smith"), usernames(search(search, "host", "Smith", 10)));
+        assertEquals(1, server.requestCount(SEARCH_PATH), "same prefix, ignoring case");
+
+        now.addAndGet(1);
+        search(search, "host", "smith", 10);
+        assertEquals(2, server.requestCount(SEARCH_PATH), "expired answers are fetched again");
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedPrefix() {
+        RemoteUserSearch search = searchWithDebounce(0);
+        // Equally long, so that no prefix is answered from another one
+        for (int i = 0; i < MAX_CACHED_PREFIXES; i++) search(search, "host", "q" + (100 + i), 10);
+        search(search, "host", "q100", 10); // now the most recently used
+        assertEquals(MAX_CACHED_PREFIXES, server.requestCount(SEARCH_PATH));
+
+        search(search, "host", "overflow", 10);
+        search(search, "host", "q100", 10);
+        assertEquals(MAX_CACHED_PREFIXES + 1, server.requestCount(SEARCH_PATH), "q100 survived the eviction");
+        search(search, "host", "q101", 10);
+        assertEquals(MAX_CACHED_PREFIXES + 2, server.requestCount(SEARCH_PATH), "q101 was the eldest");
+    }
+
+    @Test
+    void completeShorterPrefixAnswersLongerOnes() {
+        RemoteUserSearch search = searchWithDebounce(0);
+        // Five matches for a limit of 10: the server had nothing more
+        assertEquals(5, search(search, "host", "ja", 10).size());
+
+        List<GitLabUser> longer = search(search, "host", "jame", 10);
+
+        assertEquals(1, server.requestCount(SEARCH_PATH));
+        assertEquals(List.of("james.smith", "james.brown"), usernames(longer));
+    }
+
+    @Test
+    void truncatedShorterPrefixDoesNotAnswerLongerOnes() {
+        RemoteUserSearch search = searchWithDebounce(0);
+        // As many matches as asked for: there may be more on the server
+        assertEquals(2, search(search, "host", "ja", 2).size());
+
+        List<GitLabUser> longer = search(search, "host", "jame", 2);
+
+        assertEquals(2, server.requestCount(SEARCH_PATH));
+        assertEquals(List.of("james.smith", "james.brown"), usernames(longer));
+    }
+
+    @Test
+    void answersAreKeptPerHost() {
+        RemoteUserSearch search = searchWithDebounce(0);
+        search(search, "one", "smith", 10);
+        search(search, "two", "smith", 10);
+
+        assertEquals(2, server.requestCount(SEARCH_PATH));
+    }
+
+    private RemoteUserSearch searchWithDebounce(long debounceMs) {
+        return new RemoteUserSearch(client, executor, debounceMs, now::get);
+    }
+
+    private static List<GitLabUser> search(RemoteUserSearch search, String host, String query, int limit) {
+        try {
+            return search.searchAsync(host, query, limit).get(5, TimeUnit.SECONDS);
+        } catch (Exception ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
+    private static GitLabUser user(long id, String username, String name) {
+        return GitLabUser.builder().id(id).username(username).name(name).state("active").build();
+    }
+
+    private static List<String> usernames(List<GitLabUser> users) {
+        return users.stream().map(GitLabUser::getUsername).toList();
+    }
+}
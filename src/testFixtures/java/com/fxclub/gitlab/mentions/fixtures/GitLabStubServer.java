@@ -0,0 +1,287 @@
+package com.fxclub.gitlab.mentions.fixtures;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fxclub.gitlab.mentions.model.GitLabUser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the parts of the GitLab REST API the plugin lists users from:
+ * {@code /groups|projects/{id}/members/all} with offset pagination, {@code /users} with offset or keyset
+ * pagination and {@code search}, {@code /groups|projects/{id}} for full paths, and the GraphQL member queries with
+ * cursor pagination. Every request waits {@link Options#latencyMs}, and every {@link Options#errorEvery}-th one fails
+ * with a 500, to reproduce slow or flaky servers. User pages can carry ETags for conditional requests. Response
+ * body bytes are counted to compare the two APIs, and the most requests served at once to tell concurrent listings
+ * from sequential ones.
+ * <p>
+ * Shared by the benchmarks and the tests.
+ */
+public final class GitLabStubServer implements AutoCloseable {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * @param latencyMs       delay before each response
+     * @param maxPageSize     cap on {@code per_page}, like GitLab's limit of 100
+     * @param errorEvery      every n-th request answers 500; 0 disables errors
+     * @param omitTotalPages  leave out X-Total / X-Total-Pages, as GitLab does for very large collections
+     * @param failingPage     this page of offset listings always answers 404, which is not retried; 0 disables it
+     * @param etags           send ETags with REST user pages and answer a matching If-None-Match with 304
+     */
+    public record Options(long latencyMs, int maxPageSize, int errorEvery, boolean omitTotalPages, int failingPage,
+                          boolean etags) {
+        public static final Options DEFAULT = new Options(0, 100, 0, false, 0, false);
+
+        public Options withLatencyMs(long latencyMs) {
+            return new Options(latencyMs, maxPageSize, errorEvery, omitTotalPages, failingPage, etags);
+        }
+
+        public Options withErrorEvery(int errorEvery) {
+            return new Options(latencyMs, maxPageSize, errorEvery, omitTotalPages, failingPage, etags);
+        }
+
+        public Options withOmitTotalPages(boolean omitTotalPages) {
+            return new Options(latencyMs, maxPageSize, errorEvery, omitTotalPages, failingPage, etags);
+        }
+
+        public Options withFailingPage(int failingPage) {
+            return new Options(latencyMs, maxPageSize, errorEvery, omitTotalPages, failingPage, etags);
+        }
+
+        public Options withEtags(boolean etags) {
+            return new Options(latencyMs, maxPageSize, errorEvery, omitTotalPages, failingPage, etags);
+        }
+    }
+
+    private final List<GitLabUser> users;
+    private final Options options;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "GitLab stub server");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicLong requests = new AtomicLong();
+    private final Map<String, AtomicLong> requestsByPath = new ConcurrentHashMap<>();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private GitLabStubServer(List<GitLabUser> users, Options options) throws IOException {
+        this.users = List.copyOf(users);
+        this.options = options;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/api/v4/", this::handle);
+        server.createContext("/api/graphql", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /** Starts a server on a free loopback port that lists {@code users}, sorted by id like GitLab does. */
+    public static GitLabStubServer start(List<GitLabUser> users, Options options) throws IOException {
+        return new GitLabStubServer(users, options);
+    }
+
+    /** The value for the host URL setting, e.g. {@code http://127.0.0.1:54321}. */
+    public String baseUrl() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort();
+    }
+
+    public long requestCount() { return requests.get(); }
+
+    /** Requests for {@code path}, e.g. {@code /api/v4/groups/42/members/all}, whatever their query. */
+    public long requestCount(String path) {
+        AtomicLong n = requestsByPath.get(path);
+        return n == null ? 0 : n.get();
+    }
+
+    /** Response body bytes sent so far, uncompressed. */
+    public long bytesSent() { return bytesSent.get(); }
+
+    /** The most requests that were being served at the same time. */
+    public int maxInFlight() { return maxInFlight.get(); }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try (exchange) {
+            long n = requests.incrementAndGet();
+            requestsByPath.computeIfAbsent(exchange.getRequestURI().getPath(), k -> new AtomicLong()).incrementAndGet();
+            if (options.latencyMs() > 0) TimeUnit.MILLISECONDS.sleep(options.latencyMs());
+            if (options.errorEvery() > 0 && n % options.errorEvery() == 0) {
+                send(exchange, 500, "{\"message\":\"500 Internal Server Error\"}".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            String path = exchange.getRequestURI().getPath();
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            if (path.equals("/api/graphql")) {
+                serveGraphQl(exchange);
+            } else if (path.matches("/api/v4/(groups|projects)/[^/]+")) {
+                String id = path.substring(path.lastIndexOf('/') + 1);
+                String field = path.startsWith("/api/v4/projects/") ? "path_with_namespace" : "full_path";
+                send(exchange, 200, ("{\"id\":" + parseInt(id, 0) + ",\"" + field + "\":\"stub/" + id + "\"}")
+                        .getBytes(StandardCharsets.UTF_8));
+            } else if (path.matches("/api/v4/(groups|projects)/[^/]+/members/all")) {
+                servePage(exchange, query, users);
+            } else if (path.equals("/api/v4/users")) {
+                List<GitLabUser> matching = filter(query.get("search"));
+                if ("keyset".equals(query.get("pagination"))) {
+                    serveKeyset(exchange, query, matching);
+                } else {
+                    servePage(exchange, query, matching);
+                }
+            } else {
+                send(exchange, 404, "{\"message\":\"404 Not Found\"}".getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void servePage(HttpExchange exchange, Map<String, String> query, List<GitLabUser> all) throws IOException {
+        int perPage = perPage(query);
+        int page = Math.max(1, parseInt(query.get("page"), 1));
+        if (page == options.failingPage()) {
+            send(exchange, 404, "{\"message\":\"404 Not Found\"}".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        int totalPages = Math.max(1, (all.size() + perPage - 1) / perPage);
+        int from = Math.min(all.size(), (page - 1) * perPage);
+        int to = Math.min(all.size(), from + perPage);
+        var headers = exchange.getResponseHeaders();
+        headers.add("X-Page", String.valueOf(page));
+        headers.add("X-Per-Page", String.valueOf(perPage));
+        headers.add("X-Next-Page", page < totalPages ? String.valueOf(page + 1) : "");
+        if (!options.omitTotalPages()) {
+            headers.add("X-Total", String.valueOf(all.size()));
+            headers.add("X-Total-Pages", String.valueOf(totalPages));
+        }
+        sendUsers(exchange, all.subList(from, to));
+    }
+
+    private void serveKeyset(HttpExchange exchange, Map<String, String> query, List<GitLabUser> all) throws IOException {
+        int perPage = perPage(query);
+        long idAfter = parseInt(query.get("id_after"), 0);
+        int from = 0;
+        while (from < all.size() && all.get(from).getId() <= idAfter) from++;
+        int to = Math.min(all.size(), from + perPage);
+        if (to < all.size()) {
+            String next = baseUrl() + exchange.getRequestURI().getPath() + "?" + stripParam(exchange.getRequestURI().getRawQuery(), "id_after")
+                    + "&id_after=" + all.get(to - 1).getId();
+            exchange.getResponseHeaders().add("Link", "<" + next + ">; rel=\"next\"");
+        }
+        sendUsers(exchange, all.subList(from, to));
+    }
+
+    /**
+     * Answers any member query: offsets are the cursors, and {@code first} is capped like the page size. Like GitLab,
+     * which lists a member once per relation, every later page ends with the first user again as an inherited member.
+     */
+    private void serveGraphQl(HttpExchange exchange) throws IOException {
+        JsonNode variables = MAPPER.readTree(exchange.getRequestBody()).path("variables");
+        int first = Math.max(1, Math.min(options.maxPageSize(), variables.path("first").asInt(20)));
+        int from = Math.min(users.size(), parseInt(variables.path("after").asText(""), 0));
+        int to = Math.min(users.size(), from + (from > 0 && first > 1 ? first - 1 : first));
+        List<GitLabUser> page = new ArrayList<>(users.subList(from, to));
+        if (from > 0 && first > 1) page.add(users.get(0));
+        send(exchange, 200, SyntheticUsers.toGraphQlPage(page, to < users.size() ? String.valueOf(to) : null));
+    }
+
+    private List<GitLabUser> filter(String search) {
+        if (search == null || search.isEmpty()) return users;
+        String needle = search.toLowerCase(Locale.ROOT);
+        List<GitLabUser> out = new ArrayList<>();
+        for (GitLabUser u : users) {
+            if (u.getUsername().toLowerCase(Locale.ROOT).contains(needle)
+                    || (u.getName() != null && u.getName().toLowerCase(Locale.ROOT).contains(needle))) {
+                out.add(u);
+            }
+        }
+        return out;
+    }
+
+    private int perPage(Map<String, String> query) {
+        return Math.max(1, Math.min(options.maxPageSize(), parseInt(query.get("per_page"), 20)));
+    }
+
+    /** A page of users; with {@link Options#etags}, a 304 without body if the client already has this page. */
+    private void sendUsers(HttpExchange exchange, List<GitLabUser> page) throws IOException {
+        byte[] body = SyntheticUsers.toJson(page);
+        if (options.etags()) {
+            String etag = "W/\"" + Integer.toHexString(Arrays.hashCode(body)) + "\"";
+            exchange.getResponseHeaders().add("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+        }
+        send(exchange, 200, body);
+    }
+
+    private void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        bytesSent.addAndGet(body.length);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String raw) {
+        Map<String, String> params = new HashMap<>();
+        if (raw == null) return params;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static String stripParam(String raw, String name) {
+        StringBuilder out = new StringBuilder();
+        for (String pair : raw.split("&")) {
+            if (pair.startsWith(name + "=")) continue;
+            if (out.length() > 0) out.append('&');
+            out.append(pair);
+        }
+        return out.toString();
+    }
+
+    private static int parseInt(String value, int fallback) {
+        if (value == null || value.isEmpty()) return fallback;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.fxclub.gitlab.mentions.fixtures;
+
+import com.fxclub.gitlab.mentions.model.GitLabUser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Deterministic fake users for benchmarks and tests: names drawn from common first and last names, so prefixes and
+ * display names collide the way they do on a real instance, with a few bots and blocked accounts mixed in.
+ * Usernames are unique like GitLab's: the first user of a name gets the bare {@code first.last}, later ones a
+ * numeric suffix.
+ */
+public final class SyntheticUsers {
+    private static final String[] FIRST = {
+            "james", "mary", "john", "patricia", "robert", "jennifer", "michael", "linda", "william", "elizabeth",
+            "david", "barbara", "richard", "susan", "joseph", "jessica", "thomas", "sarah", "charles", "karen",
+            "dmitry", "olga", "sergey", "anna", "alexey", "maria", "ivan", "elena", "pavel", "natalia",
+    };
+    private static final String[] LAST = {
+            "smith", "johnson", "williams", "brown", "jones", "garcia", "miller", "davis", "rodriguez", "martinez",
+            "hernandez", "lopez", "gonzalez", "wilson", "anderson", "thomas", "taylor", "moore", "jackson", "martin",
+            "ivanov", "petrov", "sidorov", "smirnov", "kuznetsov", "popov", "volkov", "sokolov", "lebedev", "kozlov",
+    };
+
+    private SyntheticUsers() {}
+
+    /** {@code count} users with ids 1..count; the same count always yields the same users. */
+    public static List<GitLabUser> generate(int count) {
+        Random random = new Random(42L + count);
+        List<GitLabUser> users = new ArrayList<>(count);
+        Set<String> taken = new HashSet<>();
+        for (int i = 1; i <= count; i++) {
+            String first = FIRST[random.nextInt(FIRST.length)];
+            String last = LAST[random.nextInt(LAST.length)];
+            boolean bot = random.nextInt(50) == 0;
+            String handle = first + "." + last;
+            String username = bot ? "project_" + i + "_bot" : taken.add(handle) ? handle : handle + i;
+            users.add(GitLabUser.builder()
+                    .id(i)
+                    .username(username)
+                    .name(bot ? "Project " + i + " bot" : capitalize(first) + " " + capitalize(last))
+                    .avatarUrl("https://gitlab.example.com/uploads/-/system/user/avatar/" + i + "/avatar.png")
+                    .state(random.nextInt(40) == 0 ? "blocked" : "active")
+                    .bot(bot)
+                    .build());
+        }
+        return users;
+    }
+
+    /**
+     * The users as GitLab's users API renders them, including fields the client skips, so parsing pays the same
+     * price as against a real server.
+     */
+    public static byte[] toJson(List<GitLabUser> users) {
+        StringBuilder out = new StringBuilder(users.size() * 400).append('[');
+        for (int i = 0; i < users.size(); i++) {
+            GitLabUser u = users.get(i);
+            if (i > 0) out.append(',');
+            out.append("{\"id\":").append(u.getId())
+                    .append(",\"username\":\"").append(u.getUsername())
+                    .append("\",\"name\":\"").append(u.getName())
+                    .append("\",\"state\":\"").append(u.getState())
+                    .append("\",\"locked\":false")
+                    .append(",\"avatar_url\":\"").append(u.getAvatarUrl())
+                    .append("\",\"web_url\":\"https://gitlab.example.com/").append(u.getUsername())
+                    .append("\",\"access_level\":30,\"created_at\":\"2024-01-01T00:00:00.000Z\"")
+                    .append(",\"expires_at\":null,\"membership_state\":\"active\"")
+                    .append(",\"created_by\":{\"id\":1,\"username\":\"root\",\"name\":\"Administrator\"}")
+                    .append(",\"bot\":").append(u.isBot())
+                    .append('}');
+        }
+        return out.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The users as GraphQL member {@code nodes} with the fields the roster queries select, each wrapped in
+     * {@code user}. Avatar URLs are relative, as GitLab returns them for uploaded avatars.
+     */
+    public static String toGraphQlNodes(List<GitLabUser> users) {
+        StringBuilder out = new StringBuilder(users.size() * 200).append('[');
+        for (int i = 0; i < users.size(); i++) {
+            GitLabUser u = users.get(i);
+            if (i > 0) out.append(',');
+            out.append("{\"user\":{\"id\":\"gid://gitlab/User/").append(u.getId())
+                    .append("\",\"username\":\"").append(u.getUsername())
+                    .append("\",\"name\":\"").append(u.getName())
+                    .append("\",\"avatarUrl\":\"/uploads/-/system/user/avatar/").append(u.getId()).append("/avatar.png")
+                    .append("\",\"state\":\"").append(u.getState())
+                    .append("\",\"bot\":").append(u.isBot())
+                    .append("}}");
+        }
+        return out.append(']').toString();
+    }
+
+    /** One GraphQL response page of a member connection ({@code group.groupMembers}). */
+    public static byte[] toGraphQlPage(List<GitLabUser> users, String endCursor) {
+        String connection = "{\"pageInfo\":{\"hasNextPage\":" + (endCursor != null)
+                + ",\"endCursor\":" + (endCursor == null ? "null" : "\"" + endCursor + "\"") + "},\"nodes\":"
+                + toGraphQlNodes(users) + "}";
+        return ("{\"data\":{\"group\":{\"groupMembers\":" + connection + "}}}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String capitalize(String s) {
+        return Character.toUpperCase(s.charAt(0)) + s.substring(1);
+    }
+}